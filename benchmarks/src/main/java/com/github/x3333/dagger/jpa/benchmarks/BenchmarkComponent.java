@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.JpaModule;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.TransactionalModule;
+
+import javax.inject.Singleton;
+
+import dagger.Component;
+
+/**
+ * Component wired the same way an application would use dagger-jpa.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@Singleton
+@Component(modules = { BenchmarkModule.class, BenchmarkPropertiesModule.class, TransactionalModule.class, JpaModule.class })
+public interface BenchmarkComponent {
+
+  BenchmarkService service();
+
+  JpaService jpaService();
+
+  JpaWork jpaWork();
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import dagger.Binds;
+import dagger.Module;
+import dagger.Provides;
+
+/**
+ * Binds the benchmark persistence unit and {@link BenchmarkService}. Properties are bound by {@link BenchmarkPropertiesModule}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@Module
+public abstract class BenchmarkModule {
+
+  public static final String UNIT_NAME = "dagger-jpa-benchmarks";
+
+  @Binds
+  @Singleton
+  abstract BenchmarkService providesBenchmarkService(BenchmarkServiceImpl impl);
+
+  @Provides
+  @Named("jpa.unitname")
+  static String providesJpaUnitName() {
+    return UNIT_NAME;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks single-threaded and with one thread per available processor, reporting per-operation latency and allocation rate
+ * using the GC profiler.
+ *
+ * <p>
+ * Any JMH command line option is accepted, e.g. {@code java -jar benchmarks.jar JpaWork -f 3}. If {@code -t} is given, only that thread
+ * count is run.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+    final CommandLineOptions commandLine = new CommandLineOptions(args);
+    final int[] threadCounts = commandLine.getThreads().hasValue() //
+        ? new int[] {commandLine.getThreads().get()} //
+        : new int[] {1, Runtime.getRuntime().availableProcessors()};
+
+    for (final int threads : threadCounts) {
+      final OptionsBuilder builder = new OptionsBuilder();
+      if (commandLine.getIncludes().isEmpty()) {
+        builder.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark.*");
+      }
+      final Options options = builder//
+          .parent(commandLine)//
+          .addProfiler(GCProfiler.class)//
+          .threads(threads)//
+          .build();
+      new Runner(options).run();
+    }
+  }
+
+}
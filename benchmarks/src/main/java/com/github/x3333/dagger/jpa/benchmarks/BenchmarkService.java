@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+/**
+ * Transactional operations measured by the benchmarks.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public interface BenchmarkService {
+
+  /**
+   * Exception thrown by {@link #rollback()}. It has no stack trace so only the rollback path is measured.
+   */
+  final class BenchmarkException extends Exception {
+
+    private static final long serialVersionUID = 3604389317766853716L;
+
+    public BenchmarkException() {
+      super("Benchmark rollback", null, false, false);
+    }
+
+  }
+
+  /**
+   * Touches the {@link javax.persistence.EntityManager} and commits.
+   *
+   * @return true if the EntityManager is open.
+   */
+  boolean commit();
+
+  /**
+   * Touches the {@link javax.persistence.EntityManager} and throws, rolling back.
+   *
+   * @throws BenchmarkException always.
+   */
+  void rollback() throws BenchmarkException;
+
+  /**
+   * Begins a transaction and calls {@link #joined()} {@code calls} times, all of them joining the outer transaction.
+   *
+   * @param calls number of nested calls.
+   * @return number of nested calls that found an open EntityManager.
+   */
+  int outer(int calls);
+
+  /**
+   * Touches the {@link javax.persistence.EntityManager}. Will join a transaction when called from {@link #outer(int)}.
+   *
+   * @return true if the EntityManager is open.
+   */
+  boolean joined();
+
+  /**
+   * Begins a transaction and calls the non-transactional {@link #plain()} {@code calls} times. Baseline for {@link #outer(int)}.
+   *
+   * @param calls number of nested calls.
+   * @return number of nested calls that found an open EntityManager.
+   */
+  int outerPlain(int calls);
+
+  /**
+   * Touches the {@link javax.persistence.EntityManager}, without interception.
+   *
+   * @return true if the EntityManager is open.
+   */
+  boolean plain();
+
+  /**
+   * Persists a new entity and commits.
+   *
+   * @return the entity id.
+   */
+  int persist();
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.Transactional;
+import com.github.x3333.dagger.jpa.benchmarks.domain.BenchmarkEntity;
+
+import javax.inject.Provider;
+
+/**
+ * Intercepted implementation of {@link BenchmarkService}. Nested calls go through {@code self} so they are intercepted as well.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public abstract class BenchmarkServiceImpl implements BenchmarkService {
+
+  private static final BenchmarkException EXCEPTION = new BenchmarkException();
+
+  private final JpaWork work;
+  private final Provider<BenchmarkService> self;
+
+  public BenchmarkServiceImpl(final JpaWork work, final Provider<BenchmarkService> self) {
+    this.work = work;
+    this.self = self;
+  }
+
+  //
+
+  @Override
+  @Transactional
+  public boolean commit() {
+    return work.getEntityManager().isOpen();
+  }
+
+  @Override
+  @Transactional
+  public void rollback() throws BenchmarkException {
+    work.getEntityManager();
+    throw EXCEPTION;
+  }
+
+  @Override
+  @Transactional
+  public int outer(final int calls) {
+    final BenchmarkService service = self.get();
+    int open = 0;
+    for (int i = 0; i < calls; i++) {
+      if (service.joined()) {
+        open++;
+      }
+    }
+    return open;
+  }
+
+  @Override
+  @Transactional
+  public boolean joined() {
+    return work.getEntityManager().isOpen();
+  }
+
+  @Override
+  @Transactional
+  public int outerPlain(final int calls) {
+    final BenchmarkService service = self.get();
+    int open = 0;
+    for (int i = 0; i < calls; i++) {
+      if (service.plain()) {
+        open++;
+      }
+    }
+    return open;
+  }
+
+  @Override
+  public boolean plain() {
+    return work.getEntityManager().isOpen();
+  }
+
+  @Override
+  @Transactional
+  public int persist() {
+    final BenchmarkEntity entity = new BenchmarkEntity();
+    work.getEntityManager().persist(entity);
+    work.getEntityManager().flush();
+    return entity.getId();
+  }
+
+}
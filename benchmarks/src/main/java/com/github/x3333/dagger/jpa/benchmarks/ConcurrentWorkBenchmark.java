@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.impl.ConcurrentMapWorkContextStore;
+import com.github.x3333.dagger.jpa.impl.ThreadLocalWorkContextStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs {@link #TASKS} concurrent units of work per operation, comparing {@link com.github.x3333.dagger.jpa.WorkContextStore}s across
+ * executors.
+ *
+ * <p>
+ * {@code threadPerTask} starts a new thread per unit of work, as a virtual thread executor would. On JDK 21+ the real thing can be run with
+ * {@code -p executor=virtual}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ConcurrentWorkBenchmark {
+
+  static final int TASKS = 10_000;
+
+  /**
+   * A started {@link JpaService} using the selected store, and the executor running the units of work.
+   */
+  @State(Scope.Benchmark)
+  public static class Environment {
+
+    @Param({"threadLocal", "concurrentMap"})
+    String store;
+
+    @Param({"fixed", "threadPerTask"})
+    String executor;
+
+    JpaService jpaService;
+    JpaWork jpaWork;
+    Executor executorService;
+
+    @Setup(Level.Trial)
+    public void start() throws ReflectiveOperationException {
+      final Map<String, Object> properties = new HashMap<>();
+      properties.put(JpaProperties.CONTEXT_STORE, "concurrentMap".equals(store) //
+          ? new ConcurrentMapWorkContextStore() //
+          : new ThreadLocalWorkContextStore());
+
+      final BenchmarkComponent component = JpaEnvironment.component(properties);
+      jpaService = component.jpaService();
+      jpaWork = component.jpaWork();
+      jpaService.start();
+
+      switch (executor) {
+        case "fixed":
+          executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4);
+          break;
+        case "threadPerTask":
+          executorService = runnable -> new Thread(runnable).start();
+          break;
+        case "virtual":
+          // Only available on JDK 21+, this module targets Java 8.
+          executorService = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown executor: " + executor);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+      try {
+        if (executorService instanceof ExecutorService) {
+          ((ExecutorService) executorService).shutdown();
+          ((ExecutorService) executorService).awaitTermination(1, TimeUnit.MINUTES);
+        }
+      } finally {
+        jpaService.stop();
+      }
+    }
+
+  }
+
+  //
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public int units(final Environment env) throws InterruptedException {
+    final JpaWork work = env.jpaWork;
+    final CountDownLatch done = new CountDownLatch(TASKS);
+    final AtomicInteger open = new AtomicInteger();
+
+    for (int i = 0; i < TASKS; i++) {
+      env.executorService.execute(() -> {
+        work.begin();
+        try {
+          if (work.getEntityManager().isOpen()) {
+            open.incrementAndGet();
+          }
+        } finally {
+          work.end();
+          done.countDown();
+        }
+      });
+    }
+
+    done.await();
+    return open.get();
+  }
+
+}
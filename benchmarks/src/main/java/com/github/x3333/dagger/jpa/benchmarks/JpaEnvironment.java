@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Shared benchmark state: a started {@link JpaService} over an embedded Derby unit, plus a plain {@link EntityManagerFactory} over the same
+ * unit used as the raw baseline.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@State(Scope.Benchmark)
+public class JpaEnvironment {
+
+  /**
+   * {@link JpaProperties#POOL_SIZE}, compare pooling with {@code -p poolSize=0,16}.
+   */
+  @Param({"0"})
+  int poolSize;
+
+  BenchmarkComponent component;
+  JpaService jpaService;
+  JpaWork jpaWork;
+  BenchmarkService service;
+
+  EntityManagerFactory rawFactory;
+
+  //
+
+  @Setup(Level.Trial)
+  public void start() {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(JpaProperties.POOL_SIZE, poolSize);
+
+    component = component(properties);
+    jpaService = component.jpaService();
+    jpaWork = component.jpaWork();
+    jpaService.start();
+    service = component.service();
+
+    rawFactory = Persistence.createEntityManagerFactory(BenchmarkModule.UNIT_NAME);
+  }
+
+  static BenchmarkComponent component(final Map<?, ?> properties) {
+    return DaggerBenchmarkComponent.builder()//
+        .benchmarkPropertiesModule(new BenchmarkPropertiesModule(properties))//
+        .build();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    try {
+      rawFactory.close();
+    } finally {
+      jpaService.stop();
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.JpaWork;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link JpaWork#begin()}, {@link JpaWork#end()} and {@link JpaWork#getEntityManager()} against a raw {@link EntityManager}
+ * lifecycle.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JpaWorkBenchmark {
+
+  /**
+   * Keeps a unit of work open on the benchmark thread, so {@link JpaWork#getEntityManager()} is measured alone.
+   */
+  @State(Scope.Thread)
+  public static class OpenWork {
+
+    JpaWork work;
+
+    @Setup(Level.Iteration)
+    public void begin(final JpaEnvironment env) {
+      work = env.jpaWork;
+      work.begin();
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+      work.end();
+    }
+
+  }
+
+  //
+
+  @Benchmark
+  public boolean rawCreateClose(final JpaEnvironment env) {
+    final EntityManager em = env.rawFactory.createEntityManager();
+    try {
+      return em.isOpen();
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public boolean beginEnd(final JpaEnvironment env) {
+    final JpaWork work = env.jpaWork;
+    work.begin();
+    try {
+      return work.getEntityManager().isOpen();
+    } finally {
+      work.end();
+    }
+  }
+
+  @Benchmark
+  public EntityManager getEntityManager(final OpenWork openWork) {
+    return openWork.work.getEntityManager();
+  }
+
+  @Benchmark
+  public boolean hasBegun(final OpenWork openWork) {
+    return openWork.work.hasBegun();
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.benchmarks;
+
+import com.github.x3333.dagger.jpa.TransactionalInterceptor;
+import com.github.x3333.dagger.jpa.benchmarks.BenchmarkService.BenchmarkException;
+import com.github.x3333.dagger.jpa.benchmarks.domain.BenchmarkEntity;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TransactionalInterceptor#invoke} through the generated {@code Transactional_} interceptor, against the same work done
+ * with a raw {@link EntityManager}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalInterceptorBenchmark {
+
+  /**
+   * Number of nested calls made inside {@link TransactionalInterceptorBenchmark#joined}.
+   */
+  @State(Scope.Benchmark)
+  public static class Nesting {
+
+    @Param({"1", "10", "100"})
+    int calls;
+
+  }
+
+  //
+
+  @Benchmark
+  public boolean rawCommit(final JpaEnvironment env) {
+    final EntityManager em = env.rawFactory.createEntityManager();
+    try {
+      final EntityTransaction transaction = em.getTransaction();
+      transaction.begin();
+      final boolean open = em.isOpen();
+      transaction.commit();
+      return open;
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public boolean rawRollback(final JpaEnvironment env) {
+    final EntityManager em = env.rawFactory.createEntityManager();
+    try {
+      final EntityTransaction transaction = em.getTransaction();
+      transaction.begin();
+      final boolean open = em.isOpen();
+      transaction.rollback();
+      return open;
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public boolean outerCommit(final JpaEnvironment env) {
+    return env.service.commit();
+  }
+
+  /**
+   * Same work as {@link #outerCommit}, written by hand against {@link com.github.x3333.dagger.jpa.JpaWork JpaWork}. The difference is the
+   * overhead of the generated interceptor.
+   */
+  @Benchmark
+  public boolean directCommit(final JpaEnvironment env) {
+    env.jpaWork.begin();
+    try {
+      final EntityManager em = env.jpaWork.getEntityManager();
+      final EntityTransaction transaction = em.getTransaction();
+      transaction.begin();
+      final boolean open = em.isOpen();
+      transaction.commit();
+      return open;
+    } finally {
+      env.jpaWork.end();
+    }
+  }
+
+  @Benchmark
+  public boolean outerRollback(final JpaEnvironment env) {
+    try {
+      env.service.rollback();
+      return false;
+    } catch (final BenchmarkException e) {
+      return true;
+    }
+  }
+
+  /**
+   * One outer transaction plus {@link Nesting#calls} nested calls joining it.
+   */
+  @Benchmark
+  public int joined(final JpaEnvironment env, final Nesting nesting) {
+    return env.service.outer(nesting.calls);
+  }
+
+  /**
+   * Same as {@link #joined}, but nested calls are not intercepted. The difference is the cost of joining a transaction.
+   */
+  @Benchmark
+  public int joinedBaseline(final JpaEnvironment env, final Nesting nesting) {
+    return env.service.outerPlain(nesting.calls);
+  }
+
+  @Benchmark
+  public int rawPersist(final JpaEnvironment env) {
+    final EntityManager em = env.rawFactory.createEntityManager();
+    try {
+      final EntityTransaction transaction = em.getTransaction();
+      transaction.begin();
+      final BenchmarkEntity entity = new BenchmarkEntity();
+      em.persist(entity);
+      em.flush();
+      transaction.commit();
+      return entity.getId();
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public int persist(final JpaEnvironment env) {
+    return env.service.persist();
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.compiler;
+
+import com.github.x3333.dagger.jpa.impl.EntityIndex;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.auto.service.AutoService;
+
+/**
+ * Writes the {@link EntityIndex} of the classes being compiled, read at startup when
+ * {@link com.github.x3333.dagger.jpa.JpaProperties#ENTITY_INDEX} is enabled.
+ *
+ * <p>
+ * The index only holds the classes of the compilation, an incremental build compiling part of the entities must be followed by a full one.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@AutoService(Processor.class)
+@SupportedAnnotationTypes({"javax.persistence.Entity", "javax.persistence.Embeddable", "javax.persistence.MappedSuperclass"})
+public class EntityIndexProcessor extends AbstractProcessor {
+
+  private final Set<String> classNames = new TreeSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    for (final TypeElement annotation : annotations) {
+      for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element instanceof TypeElement) {
+          classNames.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+        }
+      }
+    }
+
+    if (roundEnv.processingOver() && !classNames.isEmpty()) {
+      writeIndex();
+    }
+    // Other processors may need the annotations as well.
+    return false;
+  }
+
+  //
+
+  private void writeIndex() {
+    try {
+      final FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", EntityIndex.RESOURCE);
+      try (Writer writer = index.openWriter()) {
+        for (final String className : classNames) {
+          writer.write(className);
+          writer.write('\n');
+        }
+      }
+    } catch (final IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, "Could not write " + EntityIndex.RESOURCE + ": " + e);
+    }
+  }
+
+}
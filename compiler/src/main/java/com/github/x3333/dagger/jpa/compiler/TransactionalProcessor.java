@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.compiler;
+
+import com.github.x3333.dagger.jpa.Transactional;
+import com.github.x3333.dagger.jpa.TransactionalInterceptor;
+import com.github.x3333.dagger.jpa.TransactionalMethod;
+
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.inject.Inject;
+import javax.inject.Scope;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+
+import dagger.Binds;
+import dagger.Module;
+
+import com.google.auto.service.AutoService;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+
+/**
+ * Generates, for each class declaring {@link Transactional @Transactional} methods, a subclass named {@value #PREFIX} plus the class name,
+ * e.g. {@code Transactional_ServiceImpl}, overriding them. Each override calls
+ * {@link TransactionalInterceptor#invoke(TransactionalMethod, TransactionalMethod.Body)} with the method resolved once in a constant and a
+ * direct call to the superclass.
+ *
+ * <p>
+ * The generated {@code TransactionalModule} binds each public class to its subclass, so every time the class is requested, the subclass is
+ * returned. The subclass's {@code @Inject} constructor takes the parameters of the {@code @Inject}, or only, constructor of the class plus
+ * the {@link TransactionalInterceptor}. Classes that can't be subclassed, final, inner or with abstract methods left, are skipped.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@AutoService(Processor.class)
+@SupportedAnnotationTypes("com.github.x3333.dagger.jpa.Transactional")
+public class TransactionalProcessor extends AbstractProcessor {
+
+  static final String PREFIX = "Transactional_";
+  static final ClassName MODULE = ClassName.get(TransactionalInterceptor.class.getPackage().getName(), "TransactionalModule");
+
+  private static final String INTERCEPTOR = "interceptor";
+
+  private final TypeSpec.Builder module = TypeSpec.classBuilder(MODULE.simpleName())//
+      .addAnnotation(Module.class)//
+      .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT);
+  private final Set<String> bindings = new HashSet<>();
+  private boolean moduleWritten;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    final Set<TypeElement> types = new LinkedHashSet<>();
+    for (final Element element : roundEnv.getElementsAnnotatedWith(Transactional.class)) {
+      if (element.getKind() == ElementKind.METHOD && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+        types.add((TypeElement) element.getEnclosingElement());
+      }
+    }
+
+    if (types.isEmpty()) {
+      return false;
+    }
+    if (moduleWritten) {
+      for (final TypeElement type : types) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, MODULE.simpleName() + " already generated, " + type + " is not bound", type);
+      }
+      return false;
+    }
+
+    for (final TypeElement type : types) {
+      if (canSubclass(type)) {
+        bind(type, generate(type));
+      }
+    }
+    writeModule();
+    return false;
+  }
+
+  //
+
+  private boolean canSubclass(final TypeElement type) {
+    final Set<Modifier> modifiers = type.getModifiers();
+    if (modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.PRIVATE)
+        || type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)
+        || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+      note(type, "can't be subclassed");
+      return false;
+    }
+    if (hasAbstractMethods(type)) {
+      note(type, "has abstract methods");
+      return false;
+    }
+    if (constructor(type) == null) {
+      note(type, "has neither an @Inject nor a single constructor");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Binds the class to its subclass in the module, when it can be referenced from the module's package.
+   */
+  private void bind(final TypeElement type, final ClassName generated) {
+    if (!isPublic(type) || !type.getTypeParameters().isEmpty()) {
+      processingEnv.getMessager().printMessage(Kind.NOTE,
+          type + " is not public or is generic, bind " + generated.simpleName() + " in a module of its own", type);
+      return;
+    }
+    final String base = "binds" + String.join("", ClassName.get(type).simpleNames());
+    String name = base;
+    for (int i = 2; !bindings.add(name); i++) {
+      name = base + i;
+    }
+    module.addMethod(MethodSpec.methodBuilder(name)//
+        .addAnnotation(Binds.class)//
+        .addModifiers(Modifier.ABSTRACT)//
+        .returns(ClassName.get(type))//
+        .addParameter(generated, "impl")//
+        .build());
+    module.addOriginatingElement(type);
+  }
+
+  private static boolean isPublic(final TypeElement type) {
+    for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+      if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeModule() {
+    moduleWritten = true;
+    try {
+      JavaFile.builder(MODULE.packageName(), module.build()).build().writeTo(processingEnv.getFiler());
+    } catch (final IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, "Could not write " + MODULE + ": " + e);
+    }
+  }
+
+  /**
+   * @return The name of the generated subclass.
+   */
+  private ClassName generate(final TypeElement type) {
+    final ClassName className = ClassName.get(type);
+    final ClassName generatedName = ClassName.get(className.packageName(), PREFIX + String.join("_", className.simpleNames()));
+    final TypeSpec.Builder generated = TypeSpec.classBuilder(generatedName.simpleName())//
+        .addModifiers(Modifier.FINAL)//
+        .addOriginatingElement(type);
+    if (isPublic(type)) {
+      generated.addModifiers(Modifier.PUBLIC);
+    }
+    for (final AnnotationMirror annotation : type.getAnnotationMirrors()) {
+      if (annotation.getAnnotationType().asElement().getAnnotation(Scope.class) != null) {
+        generated.addAnnotation(AnnotationSpec.get(annotation));
+      }
+    }
+    if (type.getTypeParameters().isEmpty()) {
+      generated.superclass(className);
+    } else {
+      final List<TypeVariableName> typeVariables = new ArrayList<>();
+      for (final TypeParameterElement typeParameter : type.getTypeParameters()) {
+        typeVariables.add(TypeVariableName.get(typeParameter));
+      }
+      generated.addTypeVariables(typeVariables);
+      generated.superclass(ParameterizedTypeName.get(className, typeVariables.toArray(new TypeName[typeVariables.size()])));
+    }
+
+    generated.addField(TypeName.get(TransactionalInterceptor.class), INTERCEPTOR, Modifier.PRIVATE, Modifier.FINAL);
+    generated.addMethod(constructorOf(constructor(type)));
+
+    int index = 0;
+    for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (method.getAnnotation(Transactional.class) == null) {
+        continue;
+      }
+      final Set<Modifier> modifiers = method.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+        processingEnv.getMessager().printMessage(Kind.WARNING, "Private, static or final @Transactional method not intercepted", method);
+        continue;
+      }
+      final String constant = "METHOD_" + index++;
+      generated.addField(FieldSpec.builder(TransactionalMethod.class, constant, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)//
+          .initializer(resolve(className, method))//
+          .build());
+      generated.addMethod(override(method, constant));
+    }
+
+    try {
+      JavaFile.builder(className.packageName(), generated.build())//
+          .skipJavaLangImports(true)//
+          .build()//
+          .writeTo(processingEnv.getFiler());
+    } catch (final IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, "Could not write " + generatedName + ": " + e, type);
+    }
+    return generatedName;
+  }
+
+  /**
+   * The constructor of the generated class: the one of the class, plus the interceptor.
+   */
+  private static MethodSpec constructorOf(final ExecutableElement constructor) {
+    final MethodSpec.Builder builder = MethodSpec.constructorBuilder().addAnnotation(Inject.class);
+    final List<String> names = new ArrayList<>();
+    for (final VariableElement parameter : constructor.getParameters()) {
+      final ParameterSpec.Builder parameterSpec = ParameterSpec.builder(TypeName.get(parameter.asType()), //
+          parameter.getSimpleName().toString());
+      for (final AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+        // Qualifiers and nullability.
+        parameterSpec.addAnnotation(AnnotationSpec.get(annotation));
+      }
+      builder.addParameter(parameterSpec.build());
+      names.add(parameter.getSimpleName().toString());
+    }
+    final String interceptor = unique(INTERCEPTOR, names);
+    builder.addParameter(TransactionalInterceptor.class, interceptor);
+    builder.varargs(constructor.isVarArgs());
+    for (final TypeMirror thrown : constructor.getThrownTypes()) {
+      builder.addException(TypeName.get(thrown));
+    }
+
+    return builder//
+        .addStatement("super($L)", String.join(", ", names))//
+        .addStatement("this.$N = $N", INTERCEPTOR, interceptor)//
+        .build();
+  }
+
+  /**
+   * {@code TransactionalMethod.of(Type.class, "name", ParameterType.class...)}
+   */
+  private CodeBlock resolve(final ClassName type, final ExecutableElement method) {
+    final Types types = processingEnv.getTypeUtils();
+    final CodeBlock.Builder code = CodeBlock.builder().add("$T.of($T.class, $S", TransactionalMethod.class, type, method.getSimpleName());
+    for (final VariableElement parameter : method.getParameters()) {
+      code.add(", $T.class", TypeName.get(types.erasure(parameter.asType())));
+    }
+    return code.add(")").build();
+  }
+
+  /**
+   * Overrides a method, joining the transaction in progress with a direct call to the superclass or calling the interceptor. Exceptions
+   * the method can't throw were thrown by the transaction itself, e.g. a checked exception from a commit, and are wrapped as by a dynamic
+   * proxy.
+   */
+  private MethodSpec override(final ExecutableElement method, final String constant) {
+    final boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+    final TypeName returned = isVoid ? TypeName.get(Void.class) : TypeName.get(method.getReturnType()).box();
+    final List<String> arguments = new ArrayList<>();
+    for (final VariableElement parameter : method.getParameters()) {
+      arguments.add(parameter.getSimpleName().toString());
+    }
+    final String call = "super." + method.getSimpleName() + "(" + String.join(", ", arguments) + ")";
+
+    final CodeBlock.Builder code = CodeBlock.builder()//
+        .beginControlFlow("if (this.$N.join($N))", INTERCEPTOR, constant)//
+        .beginControlFlow("try");
+    if (isVoid) {
+      code.addStatement("$L", call).addStatement("return");
+    } else {
+      code.addStatement("return $L", call);
+    }
+    code.nextControlFlow("finally")//
+        .addStatement("this.$N.leave()", INTERCEPTOR)//
+        .endControlFlow()//
+        .endControlFlow();
+    if (isVoid) {
+      code.add("this.$N.<$T>invoke($N, () -> {\n$>$L;\nreturn null;\n$<});\n", INTERCEPTOR, returned, constant, call);
+    } else {
+      code.add("return this.$N.<$T>invoke($N, () -> $L);\n", INTERCEPTOR, returned, constant, call);
+    }
+
+    final MethodSpec.Builder builder = overriding(method);
+    final List<TypeName> rethrown = rethrown(method);
+    if (rethrown == null) {
+      return builder.addCode(code.build()).build();
+    }
+    final String e = unique("e", arguments);
+    return builder//
+        .beginControlFlow("try")//
+        .addCode(code.build())//
+        .nextControlFlow("catch ($L $N)", multiCatch(rethrown), e)//
+        .addStatement("throw $N", e)//
+        .nextControlFlow("catch ($T $N)", Throwable.class, e)//
+        .addStatement("throw new $T($N)", UndeclaredThrowableException.class, e)//
+        .endControlFlow()//
+        .build();
+  }
+
+  private static String unique(final String name, final List<String> taken) {
+    String unique = name;
+    while (taken.contains(unique)) {
+      unique = "_" + unique;
+    }
+    return unique;
+  }
+
+  /**
+   * Same signature as the method, without its annotations: a {@link Transactional @Transactional} override would be intercepted again.
+   */
+  private static MethodSpec.Builder overriding(final ExecutableElement method) {
+    final MethodSpec.Builder builder = MethodSpec.methodBuilder(method.getSimpleName().toString()).addAnnotation(Override.class);
+    for (final Modifier modifier : method.getModifiers()) {
+      if (modifier != Modifier.ABSTRACT && modifier != Modifier.NATIVE) {
+        builder.addModifiers(modifier);
+      }
+    }
+    for (final TypeParameterElement typeParameter : method.getTypeParameters()) {
+      builder.addTypeVariable(TypeVariableName.get(typeParameter));
+    }
+    builder.returns(TypeName.get(method.getReturnType()));
+    for (final VariableElement parameter : method.getParameters()) {
+      builder.addParameter(TypeName.get(parameter.asType()), parameter.getSimpleName().toString());
+    }
+    builder.varargs(method.isVarArgs());
+    for (final TypeMirror thrown : method.getThrownTypes()) {
+      builder.addException(TypeName.get(thrown));
+    }
+    return builder;
+  }
+
+  private static CodeBlock multiCatch(final List<TypeName> exceptions) {
+    final CodeBlock.Builder code = CodeBlock.builder();
+    for (int i = 0; i < exceptions.size(); i++) {
+      code.add(i == 0 ? "$T" : " | $T", exceptions.get(i));
+    }
+    return code.build();
+  }
+
+  /**
+   * The exceptions the method can throw as is: unchecked ones and the declared ones, without subtypes of one another, as required by a
+   * multi-catch.
+   *
+   * @return The exceptions, null if the method can throw any.
+   */
+  private List<TypeName> rethrown(final ExecutableElement method) {
+    final Elements elements = processingEnv.getElementUtils();
+    final Types types = processingEnv.getTypeUtils();
+    final List<TypeMirror> candidates = new ArrayList<>();
+    candidates.add(elements.getTypeElement(RuntimeException.class.getCanonicalName()).asType());
+    candidates.add(elements.getTypeElement(Error.class.getCanonicalName()).asType());
+    for (final TypeMirror thrown : method.getThrownTypes()) {
+      candidates.add(types.erasure(thrown));
+    }
+
+    final TypeMirror throwable = elements.getTypeElement(Throwable.class.getCanonicalName()).asType();
+    final List<TypeMirror> distinct = new ArrayList<>();
+    for (final TypeMirror candidate : candidates) {
+      if (types.isSameType(candidate, throwable)) {
+        return null;
+      }
+      if (distinct.stream().noneMatch(other -> types.isSameType(candidate, other))) {
+        distinct.add(candidate);
+      }
+    }
+
+    final List<TypeName> rethrown = new ArrayList<>();
+    for (final TypeMirror candidate : distinct) {
+      if (distinct.stream().noneMatch(other -> other != candidate && types.isSubtype(candidate, other))) {
+        rethrown.add(TypeName.get(candidate));
+      }
+    }
+    return rethrown;
+  }
+
+  /**
+   * @return The {@code @Inject} constructor, or the only one, null if there is none or it is private.
+   */
+  private static ExecutableElement constructor(final TypeElement type) {
+    final List<ExecutableElement> constructors = new ArrayList<>();
+    for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getAnnotation(Inject.class) != null) {
+        return constructor.getModifiers().contains(Modifier.PRIVATE) ? null : constructor;
+      }
+      if (!constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        constructors.add(constructor);
+      }
+    }
+    return constructors.size() == 1 ? constructors.get(0) : null;
+  }
+
+  private boolean hasAbstractMethods(final TypeElement type) {
+    final Elements elements = processingEnv.getElementUtils();
+    final List<ExecutableElement> methods = ElementFilter.methodsIn(elements.getAllMembers(type));
+    for (final ExecutableElement method : methods) {
+      if (method.getModifiers().contains(Modifier.ABSTRACT) && !isImplemented(method, methods, type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isImplemented(final ExecutableElement method, final List<ExecutableElement> methods, final TypeElement type) {
+    for (final ExecutableElement implementation : methods) {
+      if (!implementation.getModifiers().contains(Modifier.ABSTRACT)
+          && processingEnv.getElementUtils().overrides(implementation, method, type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void note(final TypeElement type, final String reason) {
+    processingEnv.getMessager().printMessage(Kind.NOTE, "No " + PREFIX + " interceptor generated, " + type + " " + reason, type);
+  }
+
+}
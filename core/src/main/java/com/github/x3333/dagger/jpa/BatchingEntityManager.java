@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * {@link EntityManager} of a {@link Transactional#batchSize() batch} transaction, flushing and clearing the persistence context every
+ * {@code batchSize} writes ({@code persist}, {@code merge} and {@code remove}), so it doesn't grow with the transaction.
+ *
+ * <p>
+ * It is a dynamic proxy, so it forwards any method of the {@link EntityManager} version in use.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class BatchingEntityManager implements InvocationHandler {
+
+  /**
+   * JDBC batch size properties of known providers, unknown properties are ignored by providers. Only set if the provider has no JDBC batch
+   * size accessors.
+   */
+  private static final String[] JDBC_BATCH_SIZE_HINTS = {"hibernate.jdbc.batch_size", "eclipselink.jdbc.batch-writing.size"};
+
+  /**
+   * Hibernate 5.2+ Session JDBC batch size accessors, if the provider has them.
+   */
+  private static final ClassValue<Map<String, Method>> JDBC_BATCH_SIZE_ACCESSORS = new ClassValue<Map<String, Method>>() {
+
+    @Override
+    protected Map<String, Method> computeValue(final Class<?> type) {
+      try {
+        return ImmutableMap.of(//
+            "get", type.getMethod("getJdbcBatchSize"), //
+            "set", type.getMethod("setJdbcBatchSize", Integer.class));
+      } catch (final NoSuchMethodException e) {
+        return ImmutableMap.of();
+      }
+    }
+
+  };
+
+  private final EntityManager delegate;
+  private final int batchSize;
+  private final EntityManager proxy;
+
+  @Nullable
+  private final Object session;
+  @Nullable
+  private final Object previousJdbcBatchSize;
+  @Nullable
+  private final Object[] previousHints;
+
+  private int writes;
+
+  /**
+   * Sets the JDBC batch size of the EntityManager, until {@link #close()}.
+   */
+  BatchingEntityManager(final EntityManager delegate, final int batchSize) {
+    this.delegate = delegate;
+    this.batchSize = batchSize;
+    this.proxy = (EntityManager) Proxy.newProxyInstance(BatchingEntityManager.class.getClassLoader(), //
+        new Class<?>[] {EntityManager.class}, this);
+
+    final Object providerSession = delegate.getDelegate();
+    final Map<String, Method> accessors = JDBC_BATCH_SIZE_ACCESSORS.get(providerSession.getClass());
+    if (accessors.isEmpty()) {
+      this.session = null;
+      this.previousJdbcBatchSize = null;
+      final Map<String, Object> properties = delegate.getProperties();
+      this.previousHints = new Object[JDBC_BATCH_SIZE_HINTS.length];
+      for (int i = 0; i < JDBC_BATCH_SIZE_HINTS.length; i++) {
+        previousHints[i] = properties.get(JDBC_BATCH_SIZE_HINTS[i]);
+        delegate.setProperty(JDBC_BATCH_SIZE_HINTS[i], batchSize);
+      }
+    } else {
+      this.session = providerSession;
+      this.previousJdbcBatchSize = call(accessors.get("get"));
+      this.previousHints = null;
+      call(accessors.get("set"), batchSize);
+    }
+  }
+
+  //
+
+  /**
+   * @return The batching EntityManager.
+   */
+  EntityManager entityManager() {
+    return proxy;
+  }
+
+  /**
+   * Restores the JDBC batch size of the EntityManager. A hint it didn't have can't be removed, the {@code EntityManagerPool} doesn't reuse
+   * such an EntityManager.
+   */
+  void close() {
+    if (session != null) {
+      call(JDBC_BATCH_SIZE_ACCESSORS.get(session.getClass()).get("set"), new Object[] {previousJdbcBatchSize});
+      return;
+    }
+    for (int i = 0; i < JDBC_BATCH_SIZE_HINTS.length; i++) {
+      if (previousHints[i] != null) {
+        delegate.setProperty(JDBC_BATCH_SIZE_HINTS[i], previousHints[i]);
+      }
+    }
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "BatchingEntityManager{delegate=" + delegate + ", batchSize=" + batchSize + "}";
+      default:
+        break;
+    }
+
+    final Object result;
+    try {
+      result = method.invoke(delegate, args);
+    } catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+
+    switch (method.getName()) {
+      case "persist":
+      case "merge":
+      case "remove":
+        if (++writes >= batchSize) {
+          writes = 0;
+          delegate.flush();
+          delegate.clear();
+        }
+        break;
+      case "clear":
+        writes = 0;
+        break;
+      default:
+        break;
+    }
+    return result;
+  }
+
+  //
+
+  private Object call(final Method method, final Object... args) {
+    try {
+      return method.invoke(session, args);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (final InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.SharedCacheMode;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Second-level and query cache configuration of a persistence unit, given in {@link JpaProperties#CACHE}. Its properties are merged into
+ * the persistence properties when the {@code EntityManagerFactory} is created; properties also given directly take precedence.
+ *
+ * <pre>
+ * CacheConfiguration.builder()//
+ *     .sharedCacheMode(SharedCacheMode.ENABLE_SELECTIVE)//
+ *     .regionFactory("org.hibernate.cache.ehcache.EhCacheRegionFactory")//
+ *     .queryCache(true)//
+ *     .build();
+ * </pre>
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class CacheConfiguration {
+
+  /**
+   * Builds a {@link CacheConfiguration}.
+   */
+  public static final class Builder {
+
+    private final Map<String, Object> properties = new LinkedHashMap<>();
+
+    private Builder() {}
+
+    /**
+     * @param mode Which entities are cached, {@code javax.persistence.sharedCache.mode}.
+     * @return This builder.
+     */
+    public Builder sharedCacheMode(final SharedCacheMode mode) {
+      return property("javax.persistence.sharedCache.mode", mode.name());
+    }
+
+    /**
+     * Enables the second-level cache, with the Hibernate region factory given.
+     *
+     * @param regionFactoryClass Region factory class name, {@code hibernate.cache.region.factory_class}.
+     * @return This builder.
+     */
+    public Builder regionFactory(final String regionFactoryClass) {
+      property("hibernate.cache.use_second_level_cache", "true");
+      return property("hibernate.cache.region.factory_class", regionFactoryClass);
+    }
+
+    /**
+     * @param enabled If query results are cached, {@code hibernate.cache.use_query_cache}.
+     * @return This builder.
+     */
+    public Builder queryCache(final boolean enabled) {
+      return property("hibernate.cache.use_query_cache", Boolean.toString(enabled));
+    }
+
+    /**
+     * Any other cache property of the persistence provider.
+     *
+     * @param key Property key.
+     * @param value Property value.
+     * @return This builder.
+     */
+    public Builder property(final String key, final Object value) {
+      properties.put(checkNotNull(key), checkNotNull(value));
+      return this;
+    }
+
+    public CacheConfiguration build() {
+      return new CacheConfiguration(ImmutableMap.copyOf(properties));
+    }
+
+  }
+
+  private final Map<String, Object> properties;
+
+  private CacheConfiguration(final Map<String, Object> properties) {
+    this.properties = properties;
+  }
+
+  //
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return The persistence properties of this configuration.
+   */
+  public Map<String, Object> getProperties() {
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this).add("properties", properties).toString();
+  }
+
+}
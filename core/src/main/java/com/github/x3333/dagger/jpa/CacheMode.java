@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import javax.annotation.Nullable;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
+
+/**
+ * How a {@link Transactional @Transactional} method uses the second-level cache, set as the {@code javax.persistence.cache.retrieveMode}
+ * and {@code javax.persistence.cache.storeMode} of the {@code EntityManager} while the method runs.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public enum CacheMode {
+
+  /**
+   * Leaves the {@code EntityManager} cache modes as they are.
+   */
+  DEFAULT(null, null),
+
+  /**
+   * Reads from and writes to the cache.
+   */
+  USE(CacheRetrieveMode.USE, CacheStoreMode.USE),
+
+  /**
+   * Neither reads from nor writes to the cache, e.g. for bulk jobs, so they don't evict hot entries.
+   */
+  BYPASS(CacheRetrieveMode.BYPASS, CacheStoreMode.BYPASS),
+
+  /**
+   * Reads from the database and refreshes the cache with what is read.
+   */
+  REFRESH(CacheRetrieveMode.BYPASS, CacheStoreMode.REFRESH);
+
+  @Nullable
+  private final CacheRetrieveMode retrieveMode;
+  @Nullable
+  private final CacheStoreMode storeMode;
+
+  CacheMode(@Nullable final CacheRetrieveMode retrieveMode, @Nullable final CacheStoreMode storeMode) {
+    this.retrieveMode = retrieveMode;
+    this.storeMode = storeMode;
+  }
+
+  //
+
+  /**
+   * @return The cache retrieve mode, null for {@link #DEFAULT}.
+   */
+  @Nullable
+  public CacheRetrieveMode getRetrieveMode() {
+    return retrieveMode;
+  }
+
+  /**
+   * @return The cache store mode, null for {@link #DEFAULT}.
+   */
+  @Nullable
+  public CacheStoreMode getStoreMode() {
+    return storeMode;
+  }
+
+}
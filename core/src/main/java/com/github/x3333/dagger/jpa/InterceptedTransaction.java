@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transaction begun by {@link TransactionalInterceptor} for a method. It is begun right away, or, in a lazy unit of work, when the method
+ * first asks for the {@link EntityManager}, so a method that never does, never begins it.
+ *
+ * <p>
+ * With a {@link Transactional#timeoutMillis() timeout}, the time remaining to the deadline is set as the query and lock timeouts of the
+ * {@link EntityManager}, and the transaction is rolled back if the deadline passes before commit. The
+ * {@link Transactional#cacheMode() cache mode} is set the same way; all of them are restored when the transaction ends, so pooled or
+ * shared EntityManagers don't keep them.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class InterceptedTransaction {
+
+  /**
+   * Hibernate's flush mode property, set to manual in {@link Transactional#readOnly() read-only} transactions so the commit doesn't flush,
+   * and therefore doesn't dirty-check. Other providers ignore it. Hibernate applies its stored properties again on every
+   * {@link EntityManager#setProperty(String, Object) setProperty}, so it must be put back, not only the flush mode.
+   */
+  static final String FLUSH_MODE_HINT = "org.hibernate.flushMode";
+  private static final String MANUAL_FLUSH = "MANUAL";
+
+  private static final String QUERY_TIMEOUT = "javax.persistence.query.timeout";
+  private static final String LOCK_TIMEOUT = "javax.persistence.lock.timeout";
+  /**
+   * Applied on release when the EntityManager had no timeouts: no query timeout, and wait for locks as Hibernate does by default.
+   */
+  private static final Integer NO_QUERY_TIMEOUT = 0;
+  private static final Integer NO_LOCK_TIMEOUT = -1;
+
+  private static final String CACHE_RETRIEVE_MODE = "javax.persistence.cache.retrieveMode";
+  private static final String CACHE_STORE_MODE = "javax.persistence.cache.storeMode";
+
+  private static final Logger logger = LoggerFactory.getLogger(InterceptedTransaction.class);
+
+  private final WorkContext context;
+  private final boolean ownsEntityManager;
+  private final TransactionAttributes attributes;
+  @Nullable
+  private final JpaMetrics metrics;
+  private final int profilingThreshold;
+
+  /**
+   * Present once begun.
+   */
+  @Nullable
+  private EntityManager em;
+  @Nullable
+  private FlushModeType flushMode;
+  @Nullable
+  private Object previousFlushModeHint;
+  @Nullable
+  private BatchingEntityManager batch;
+  @Nullable
+  private ProfilingEntityManager profiler;
+  @Nullable
+  private List<Runnable> afterCommit;
+  @Nullable
+  private List<Runnable> afterRollback;
+  @Nullable
+  private Object[] previousCacheModes;
+  private long begunAt;
+
+  /**
+   * {@link System#nanoTime()} deadline, 0 if none.
+   */
+  private long deadline;
+  private boolean timeoutsApplied;
+  @Nullable
+  private Object previousQueryTimeout;
+  @Nullable
+  private Object previousLockTimeout;
+
+  /**
+   * @param context Unit of work of the transaction.
+   * @param ownsEntityManager If the unit of work ends with the transaction.
+   * @param attributes Attributes of the method.
+   * @param metrics Metrics of the unit, null if disabled.
+   * @param profilingThreshold {@link JpaProperties#PROFILING_THRESHOLD Profiling threshold} of the unit, 0 if disabled.
+   */
+  InterceptedTransaction(//
+      final WorkContext context, //
+      final boolean ownsEntityManager, //
+      final TransactionAttributes attributes, //
+      @Nullable final JpaMetrics metrics, //
+      final int profilingThreshold) {
+    this.context = context;
+    this.ownsEntityManager = ownsEntityManager;
+    this.attributes = attributes;
+    this.metrics = metrics;
+    this.profilingThreshold = profilingThreshold;
+    this.deadline = attributes.timeoutMillis() != 0 ? deadlineAfter(attributes.timeoutMillis()) : 0;
+  }
+
+  //
+
+  static long deadlineAfter(final long timeoutMillis) {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    // 0 means no deadline.
+    return deadline == 0 ? 1 : deadline;
+  }
+
+  static boolean expired(final long deadline) {
+    return deadline != 0 && System.nanoTime() - deadline >= 0;
+  }
+
+  /**
+   * Sets the cache modes of the EntityManager.
+   *
+   * @return The previous modes, to be given to {@link #restoreCacheModes(EntityManager, Object[])}.
+   */
+  static Object[] applyCacheModes(final EntityManager entityManager, final CacheMode cacheMode) {
+    final Map<String, Object> properties = entityManager.getProperties();
+    final Object[] previous = {properties.get(CACHE_RETRIEVE_MODE), properties.get(CACHE_STORE_MODE)};
+    entityManager.setProperty(CACHE_RETRIEVE_MODE, cacheMode.getRetrieveMode());
+    entityManager.setProperty(CACHE_STORE_MODE, cacheMode.getStoreMode());
+    return previous;
+  }
+
+  static void restoreCacheModes(final EntityManager entityManager, final Object[] previous) {
+    entityManager.setProperty(CACHE_RETRIEVE_MODE, previous[0] != null ? previous[0] : CacheRetrieveMode.USE);
+    entityManager.setProperty(CACHE_STORE_MODE, previous[1] != null ? previous[1] : CacheStoreMode.USE);
+  }
+
+  boolean isBegun() {
+    return em != null;
+  }
+
+  /**
+   * @return The deadline of the code running in the transaction, 0 if none.
+   */
+  long deadline() {
+    return deadline;
+  }
+
+  /**
+   * Sets the deadline of the code running in the transaction, e.g. for a joined method, and its remaining time as the timeouts of the
+   * EntityManager.
+   *
+   * @param deadline Deadline, 0 for none.
+   */
+  void deadline(final long deadline) {
+    this.deadline = deadline;
+    if (em != null && (deadline != 0 || timeoutsApplied)) {
+      applyTimeouts(em);
+    }
+  }
+
+  /**
+   * Marks the transaction rollback-only, as code running in it has exceeded its deadline.
+   */
+  void timedOut(final String method) {
+    logger.warn("Transaction timed out in {}, marked for rollback", method);
+    if (em != null && em.getTransaction().isActive()) {
+      em.getTransaction().setRollbackOnly();
+    }
+  }
+
+  void begin(final EntityManager entityManager) {
+    try {
+      if (attributes.readOnly()) {
+        flushMode = entityManager.getFlushMode();
+        previousFlushModeHint = entityManager.getProperties().get(FLUSH_MODE_HINT);
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+        entityManager.setProperty(FLUSH_MODE_HINT, MANUAL_FLUSH);
+      } else if (attributes.batchSize() > 0) {
+        batch = new BatchingEntityManager(entityManager, attributes.batchSize());
+        context.transactionEntityManager = batch.entityManager();
+      }
+      if (profilingThreshold > 0) {
+        final EntityManager profiled = batch != null ? batch.entityManager() : entityManager;
+        profiler = new ProfilingEntityManager(profiled, attributes.method(), profilingThreshold);
+        context.transactionEntityManager = profiler.entityManager();
+      }
+
+      if (attributes.cacheMode() != CacheMode.DEFAULT) {
+        previousCacheModes = applyCacheModes(entityManager, attributes.cacheMode());
+      }
+      if (deadline != 0) {
+        applyTimeouts(entityManager);
+      }
+
+      begunAt = metrics != null ? System.nanoTime() : 0;
+      entityManager.getTransaction().begin();
+    } catch (final RuntimeException | Error e) {
+      release(entityManager);
+      throw e;
+    }
+
+    em = entityManager;
+    logger.trace("Transaction begun");
+    if (metrics != null) {
+      metrics.transactionBegun(attributes.method());
+    }
+  }
+
+  /**
+   * Ends the transaction of a method that threw, rolling back or committing according to {@link Transactional#rollbackOn()}. Errors
+   * always roll back.
+   */
+  void fail(final Throwable e) {
+    if (e instanceof Exception && !attributes.rollbackOn((Exception) e)) {
+      logger.trace("Committing", e);
+      commit();
+    } else {
+      logger.trace("Reverting", e);
+      rollback();
+    }
+  }
+
+  /**
+   * Commits, then runs the {@link #afterCommit(Runnable) after-commit} callbacks, or the after-rollback ones if the commit fails.
+   */
+  void commit() {
+    if (em != null) {
+      try {
+        commit(em);
+      } catch (final RuntimeException | Error e) {
+        afterCompletion(false);
+        throw e;
+      }
+    }
+    afterCompletion(true);
+  }
+
+  /**
+   * Rolls back, then runs the {@link #afterRollback(Runnable) after-rollback} callbacks.
+   */
+  void rollback() {
+    try {
+      if (em != null) {
+        rollback(em);
+      }
+    } finally {
+      afterCompletion(false);
+    }
+  }
+
+  void afterCommit(final Runnable callback) {
+    if (afterCommit == null) {
+      afterCommit = new ArrayList<>();
+    }
+    afterCommit.add(callback);
+  }
+
+  void afterRollback(final Runnable callback) {
+    if (afterRollback == null) {
+      afterRollback = new ArrayList<>();
+    }
+    afterRollback.add(callback);
+  }
+
+  //
+
+  private void commit(final EntityManager entityManager) {
+    try {
+      if (flushMode != null && ownsEntityManager) {
+        // Read-only and the EntityManager closes with the transaction, detach its entities so nothing is dirty-checked.
+        entityManager.clear();
+      }
+      // Otherwise the work outlives the transaction and its entities must stay managed. The manual flush mode is still in effect, so the
+      // commit doesn't flush and nothing is dirty-checked either; it is only put back by release.
+
+      final EntityTransaction transaction = entityManager.getTransaction();
+      if (expired(deadline)) {
+        // Commit fails on a rollback-only transaction, rolling it back.
+        timedOut(attributes.method());
+      }
+      if (metrics == null) {
+        transaction.commit();
+        return;
+      }
+
+      final long committing = System.nanoTime();
+      try {
+        transaction.commit();
+      } catch (final RuntimeException e) {
+        metrics.transactionRolledBack(attributes.method(), System.nanoTime() - begunAt);
+        throw e;
+      }
+      final long committed = System.nanoTime();
+      metrics.transactionCommitted(attributes.method(), committed - begunAt, committed - committing);
+    } finally {
+      release(entityManager);
+    }
+  }
+
+  private void rollback(final EntityManager entityManager) {
+    try {
+      entityManager.getTransaction().rollback();
+      if (metrics != null) {
+        metrics.transactionRolledBack(attributes.method(), System.nanoTime() - begunAt);
+      }
+    } finally {
+      release(entityManager);
+    }
+  }
+
+  /**
+   * Runs the callbacks of the outcome and discards the others. A failing callback is logged, the transaction is already over.
+   */
+  private void afterCompletion(final boolean committed) {
+    final List<Runnable> callbacks = committed ? afterCommit : afterRollback;
+    afterCommit = null;
+    afterRollback = null;
+    if (callbacks == null) {
+      return;
+    }
+    for (final Runnable callback : callbacks) {
+      try {
+        callback.run();
+      } catch (final RuntimeException e) {
+        logger.error("{} callback of {} failed", committed ? "After-commit" : "After-rollback", attributes.method(), e);
+      }
+    }
+  }
+
+  //
+
+  private void applyTimeouts(final EntityManager entityManager) {
+    if (!timeoutsApplied) {
+      final Map<String, Object> properties = entityManager.getProperties();
+      previousQueryTimeout = properties.get(QUERY_TIMEOUT);
+      previousLockTimeout = properties.get(LOCK_TIMEOUT);
+      timeoutsApplied = true;
+    }
+
+    if (deadline == 0) {
+      restoreTimeouts(entityManager);
+      return;
+    }
+    // At least 1ms, 0 would be no timeout.
+    final long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    final Integer timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+    entityManager.setProperty(QUERY_TIMEOUT, timeout);
+    entityManager.setProperty(LOCK_TIMEOUT, timeout);
+  }
+
+  private void restoreTimeouts(final EntityManager entityManager) {
+    entityManager.setProperty(QUERY_TIMEOUT, previousQueryTimeout != null ? previousQueryTimeout : NO_QUERY_TIMEOUT);
+    entityManager.setProperty(LOCK_TIMEOUT, previousLockTimeout != null ? previousLockTimeout : NO_LOCK_TIMEOUT);
+  }
+
+  private void release(final EntityManager entityManager) {
+    if (flushMode != null) {
+      // Before any other property is set, or Hibernate applies the manual flush mode again. Also when owned, as a pooled EntityManager
+      // outlives the work.
+      entityManager.setProperty(FLUSH_MODE_HINT, previousFlushModeHint != null ? previousFlushModeHint : flushMode.name());
+      entityManager.setFlushMode(flushMode);
+    }
+    if (batch != null || profiler != null) {
+      context.transactionEntityManager = null;
+    }
+    if (batch != null) {
+      batch.close();
+    }
+    if (profiler != null) {
+      final TransactionProfile profile = profiler.finish();
+      logger.debug("Transaction profile {}", profile);
+      if (metrics != null) {
+        metrics.transactionProfiled(profile);
+      }
+    }
+    if (timeoutsApplied) {
+      restoreTimeouts(entityManager);
+    }
+    if (previousCacheModes != null) {
+      restoreCacheModes(entityManager, previousCacheModes);
+    }
+  }
+
+}
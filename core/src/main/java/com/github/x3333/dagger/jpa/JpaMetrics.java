@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives the events of units of work and of the transactions managed by {@link TransactionalInterceptor}, enabled by
+ * {@link JpaProperties#METRICS}.
+ *
+ * <p>
+ * Methods are called inline by the thread doing the work, so they must be thread safe and fast. Durations are in nanoseconds. Transactional
+ * methods are named {@code SimpleClassName.methodName}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public interface JpaMetrics {
+
+  /**
+   * A unit of work has begun, and with it an EntityManager.
+   */
+  default void workBegun() {}
+
+  /**
+   * A unit of work has ended.
+   *
+   * @param method Transactional method that last begun a transaction in the unit of work, null if none.
+   * @param durationNanos Time the unit of work held its EntityManager.
+   */
+  default void workEnded(@Nullable final String method, final long durationNanos) {}
+
+  /**
+   * A unit of work was left open by a terminated thread, and ended by the {@link JpaProperties#WATCHDOG_THRESHOLD watchdog}.
+   *
+   * @param method Transactional method that last begun a transaction in the unit of work, null if none.
+   */
+  default void workLeaked(@Nullable final String method) {}
+
+  /**
+   * A unit of work was rejected, its priority class being at its {@link JpaProperties#WORK_LIMIT limit}.
+   *
+   * @param priority Priority class of the unit of work, empty for the default class.
+   */
+  default void workRejected(final String priority) {}
+
+  /**
+   * A transactional method has begun a transaction.
+   *
+   * @param method Transactional method.
+   */
+  default void transactionBegun(final String method) {}
+
+  /**
+   * A transactional method has joined a transaction in progress.
+   *
+   * @param method Transactional method.
+   */
+  default void transactionJoined(final String method) {}
+
+  /**
+   * A transaction has been committed.
+   *
+   * @param method Transactional method that begun the transaction.
+   * @param durationNanos Time from begin to the end of the commit.
+   * @param commitNanos Time spent committing.
+   */
+  default void transactionCommitted(final String method, final long durationNanos, final long commitNanos) {}
+
+  /**
+   * A transaction has been rolled back, or failed to commit.
+   *
+   * @param method Transactional method that begun the transaction.
+   * @param durationNanos Time from begin to the end of the rollback.
+   */
+  default void transactionRolledBack(final String method, final long durationNanos) {}
+
+  /**
+   * A rolled back transaction is being retried, see {@link Transactional#retries()}.
+   *
+   * @param method Transactional method that begun the transaction.
+   */
+  default void transactionRetried(final String method) {}
+
+  /**
+   * A transaction has ended, with the calls made through its EntityManager, enabled by {@link JpaProperties#PROFILING_THRESHOLD}.
+   *
+   * @param profile Profile of the transaction.
+   */
+  default void transactionProfiled(final TransactionProfile profile) {}
+
+}
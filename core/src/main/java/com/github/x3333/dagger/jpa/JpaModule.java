@@ -14,6 +14,7 @@
 package com.github.x3333.dagger.jpa;
 
 import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+import com.github.x3333.dagger.jpa.impl.JpaUnits;
 
 import java.util.Map;
 
@@ -25,10 +26,25 @@ import javax.persistence.EntityManager;
 import dagger.Binds;
 import dagger.Module;
 import dagger.Provides;
+import dagger.multibindings.Multibinds;
 
 /**
  * Default JPA Module to be used in Dagger Component.
  * 
+ * <p>
+ * The primary persistence unit is bound from {@code @Named("jpa.unitname")} and {@code @Named("jpa.properties")}. Additional units, e.g.
+ * read replicas, are bound into the {@code Map<String, JpaServiceImpl>} multibinding:
+ * 
+ * <pre>
+ * &#64;Provides
+ * &#64;Singleton
+ * &#64;IntoMap
+ * &#64;StringKey("replica1")
+ * static JpaServiceImpl providesReplica1() {
+ *   return new JpaServiceImpl("replica1", null);
+ * }
+ * </pre>
+ * 
  * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
  */
 @Module
@@ -41,12 +57,18 @@ public abstract class JpaModule {
     return new JpaServiceImpl(persistenceUnitName, persistenceProperties);
   }
 
+  @Multibinds
+  abstract Map<String, JpaServiceImpl> providesJpaUnits();
+
   @Binds
-  abstract JpaService providesJpaService(final JpaServiceImpl impl);
+  abstract JpaService providesJpaService(final JpaUnits units);
 
   @Binds
-  abstract JpaWork providesJpaWork(final JpaServiceImpl impl);
+  abstract JpaWork providesJpaWork(final JpaUnits units);
 
+  /**
+   * The EntityManager of the unit of work in progress, batching writes inside a {@link Transactional#batchSize() batch} transaction.
+   */
   @Provides
   public static EntityManager providesEntityManager(final JpaWork jpaWork) {
     return jpaWork.getEntityManager();
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+/**
+ * dagger-jpa settings, given in the {@code @Named("jpa.properties")} map along with the persistence provider properties.
+ *
+ * <p>
+ * All keys start with {@value #PREFIX} and are removed from the map before it is handed to the persistence provider. Values may be given
+ * as {@link String} or as the setting type.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class JpaProperties {
+
+  /**
+   * Prefix of all dagger-jpa settings.
+   */
+  public static final String PREFIX = "dagger.jpa.";
+
+  /**
+   * Maximum number of idle {@code EntityManager}s pooled for reuse instead of closed. By default 0, pooling disabled.
+   */
+  public static final String POOL_SIZE = PREFIX + "pool.size";
+
+  /**
+   * If true, the {@code EntityManager} is created on the first {@link JpaWork#getEntityManager()} instead of on {@link JpaWork#begin()}.
+   * By default false.
+   */
+  public static final String LAZY_WORK = PREFIX + "work.lazy";
+
+  /**
+   * {@link WorkContextStore} binding units of work to threads, an instance or a class name. By default a thread local store.
+   */
+  public static final String CONTEXT_STORE = PREFIX + "context.store";
+
+  /**
+   * Comma separated units, bound in the {@code Map<String, JpaServiceImpl>} multibinding, serving {@link Transactional#readOnly()
+   * read-only} transactions. By default none.
+   */
+  public static final String READ_UNITS = PREFIX + "read.units";
+
+  /**
+   * How read-only transactions are spread across {@link #READ_UNITS}: {@value #ROUTING_ROUND_ROBIN} or
+   * {@value #ROUTING_LEAST_OUTSTANDING}. By default {@value #ROUTING_ROUND_ROBIN}.
+   */
+  public static final String READ_ROUTING = PREFIX + "read.routing";
+
+  /**
+   * {@link #READ_ROUTING} picking each read unit in turn.
+   */
+  public static final String ROUTING_ROUND_ROBIN = "round-robin";
+
+  /**
+   * {@link #READ_ROUTING} picking the read unit with fewer transactions in progress.
+   */
+  public static final String ROUTING_LEAST_OUTSTANDING = "least-outstanding";
+
+  /**
+   * {@link JpaMetrics} receiving unit of work and transaction events, an instance or a class name. By default none, only the
+   * {@link #STATISTICS} are recorded.
+   */
+  public static final String METRICS = PREFIX + "metrics";
+
+  /**
+   * Enables a watchdog logging each unit of work open longer than this threshold in milliseconds, and ending the ones left open
+   * by terminated threads. By default 0, disabled.
+   */
+  public static final String WATCHDOG_THRESHOLD = PREFIX + "watchdog.threshold";
+
+  /**
+   * {@link CacheConfiguration} of the second-level and query caches. By default none, the provider configuration applies.
+   */
+  public static final String CACHE = PREFIX + "cache";
+
+  /**
+   * If true, the managed classes indexed by the {@code dagger-jpa-compiler} processor are given to the persistence provider, which then
+   * doesn't scan for them. With more than one unit, the comma separated packages of the unit's classes instead. By default false.
+   */
+  public static final String ENTITY_INDEX = PREFIX + "entity.index";
+
+  /**
+   * Enables profiling of the {@code EntityManager} calls of each transaction, given to
+   * {@link JpaMetrics#transactionProfiled(TransactionProfile)}. Loads or queries repeated more than this threshold in a transaction are
+   * logged as a likely N+1. By default 0, disabled.
+   */
+  public static final String PROFILING_THRESHOLD = PREFIX + "profiling.threshold";
+
+  /**
+   * {@link java.util.concurrent.Executor Executor} ending the transactions of methods returning a {@code CompletionStage}, an instance or
+   * a class name. By default none, the thread completing the stage does it.
+   */
+  public static final String ASYNC_EXECUTOR = PREFIX + "async.executor";
+
+  /**
+   * If true, each unit keeps statistics of its transactional methods, reported by {@link JpaService#statisticsReport(int)}. By default
+   * true.
+   */
+  public static final String STATISTICS = PREFIX + "statistics";
+
+  /**
+   * If true, the {@link #STATISTICS} of each unit are registered as an MBean while the unit is started. By default false.
+   */
+  public static final String JMX = PREFIX + "jmx";
+
+  /**
+   * Maximum number of units of work open at the same time in each unit, beginning more waits up to {@link #WORK_QUEUE_TIMEOUT} and then
+   * fails with a {@link WorkRejectedException}. Applies to the classes not in {@link #WORK_LIMITS}. By default 0, no limit.
+   */
+  public static final String WORK_LIMIT = PREFIX + "work.limit";
+
+  /**
+   * Limits of the {@link Transactional#priority() priority} classes, as comma separated {@code class=limit} pairs, e.g.
+   * {@code batch=4,reports=8}, or a {@code Map}. Each class has its own limit, independent of {@link #WORK_LIMIT}. By default none.
+   */
+  public static final String WORK_LIMITS = PREFIX + "work.limits";
+
+  /**
+   * Milliseconds beginning work over a {@link #WORK_LIMIT limit} waits for another unit of work to end before being rejected. By default
+   * 0, rejected right away.
+   */
+  public static final String WORK_QUEUE_TIMEOUT = PREFIX + "work.queue.timeout";
+
+  private JpaProperties() {}
+
+}
@@ -13,6 +13,9 @@
 
 package com.github.x3333.dagger.jpa;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import javax.persistence.EntityManager;
 
 /**
@@ -31,7 +34,27 @@ public interface JpaService {
   void start();
 
   /**
-   * Tells if this JpaService is already started.
+   * Starts the underlying persistence engine in a background thread, so the rest of the application can start in parallel. Work can only
+   * begin after the returned future completes.
+   * 
+   * <p>
+   * If already starting or started, returns the future of that start. If the start fails, the service is left stopped and the future
+   * completes exceptionally.
+   * 
+   * @return Future completed with this service once started.
+   */
+  CompletableFuture<JpaService> startAsync();
+
+  /**
+   * Same as {@link #startAsync()}, but starts the persistence engine using the given executor.
+   * 
+   * @param executor Executor to run the start.
+   * @return Future completed with this service once started.
+   */
+  CompletableFuture<JpaService> startAsync(Executor executor);
+
+  /**
+   * Tells if this JpaService is already started. A service still starting is not started.
    * 
    * @return true if already started, false otherwise.
    */
@@ -39,8 +62,17 @@ public interface JpaService {
 
   /**
    * Stops the underlying persistence engine. For instance, it closes the {@code EntityManagerFactory}. If already stopped or not started
-   * yet, calling this method does nothing.
+   * yet, calling this method does nothing. If still starting, waits for the start to finish before stopping.
    */
   void stop();
 
+  /**
+   * Reports the hot methods, the transactional methods that spent the most time in transactions they begun, with their number of calls,
+   * join ratio, rollback rate and transaction and unit of work durations. Enabled by {@link JpaProperties#STATISTICS}.
+   * 
+   * @param top Maximum number of methods reported per persistence unit.
+   * @return Text report, one line per method, empty if statistics are disabled.
+   */
+  String statisticsReport(int top);
+
 }
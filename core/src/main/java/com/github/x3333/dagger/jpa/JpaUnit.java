@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+
+import javax.inject.Qualifier;
+
+/**
+ * Qualifies a binding, like an {@link javax.persistence.EntityManager} or a {@link JpaWork}, of a specific persistence unit.
+ * 
+ * <pre>
+ * &#64;Provides
+ * &#64;JpaUnit("reports")
+ * static EntityManager providesReportsEntityManager(JpaUnits units) {
+ *   return units.work("reports").getEntityManager();
+ * }
+ * </pre>
+ * 
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@Qualifier
+@Documented
+@Retention(RUNTIME)
+public @interface JpaUnit {
+
+  /**
+   * @return The unit name, as bound in the {@code Map<String, JpaServiceImpl>} multibinding.
+   */
+  String value();
+
+}
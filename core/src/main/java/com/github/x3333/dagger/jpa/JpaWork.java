@@ -13,7 +13,24 @@
 
 package com.github.x3333.dagger.jpa;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.TypedQuery;
+
+import com.google.common.base.Throwables;
 
 /**
  * This interface is used to gain manual control over the JPA unit of work. This is mostly to do work in
@@ -24,8 +41,8 @@ import javax.persistence.EntityManager;
  * Asking for an {@link EntityManager} before {@link #begin()} will thrown an exception.
  * 
  * <p>
- * Operations will always be binded to the local thread. Beginning/ending corresponds to opening and closing the thread's
- * {@code EntityManager}. Always {@link #end()} in a <code>finally</code> block.
+ * Operations will always be binded to the local thread, unless {@link #detach() detached}. Beginning/ending corresponds to opening and
+ * closing the thread's {@code EntityManager}. Always {@link #end()} in a <code>finally</code> block.
  * 
  * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
  */
@@ -44,7 +61,17 @@ public interface JpaWork {
   void begin();
 
   /**
-   * End EntityManager work. If already called, calling this method does nothing.
+   * Begin EntityManager work on top of the work in progress, if any, which is suspended until {@link #end()}.
+   * 
+   * @throws UnsupportedOperationException If the implementation doesn't stack units of work.
+   */
+  default void beginNew() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * End EntityManager work, resuming the work suspended by {@link #beginNew()}, if any. If already called, calling this method does
+   * nothing.
    */
   void end();
 
@@ -55,4 +82,136 @@ public interface JpaWork {
    */
   boolean hasBegun();
 
+  /**
+   * The unit of work bound to the current thread.
+   * 
+   * @return The current context, null if work hasn't begun.
+   * @throws UnsupportedOperationException If the implementation doesn't expose its context.
+   */
+  @Nullable
+  default WorkContext getContext() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Unbinds the unit of work from the current thread without ending it, so it can be attached to another thread.
+   * 
+   * @return The detached context, null if work hasn't begun.
+   * @throws UnsupportedOperationException If the implementation doesn't expose its context.
+   */
+  @Nullable
+  default WorkContext detach() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Binds a detached unit of work to the current thread. Work must not have begun in the current thread.
+   * 
+   * @param context Context returned by {@link #detach()}.
+   * @throws UnsupportedOperationException If the implementation doesn't expose its context.
+   */
+  default void attach(final WorkContext context) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Registers a callback run once the {@link Transactional @Transactional} transaction in progress commits.
+   * 
+   * @param callback Callback, run outside of the transaction.
+   * @throws IllegalStateException If work hasn't begun or there is no such transaction in progress.
+   */
+  default void afterCommit(final Runnable callback) {
+    final WorkContext context = getContext();
+    checkState(context != null, "Work hasn't begun!");
+    context.afterCommit(callback);
+  }
+
+  /**
+   * Registers a callback run once the {@link Transactional @Transactional} transaction in progress rolls back.
+   * 
+   * @param callback Callback, run outside of the transaction.
+   * @throws IllegalStateException If work hasn't begun or there is no such transaction in progress.
+   */
+  default void afterRollback(final Runnable callback) {
+    final WorkContext context = getContext();
+    checkState(context != null, "Work hasn't begun!");
+    context.afterRollback(callback);
+  }
+
+  /**
+   * Streams the results of a query through a forward-only cursor, detaching the entities streamed every {@code clearEvery} rows. The
+   * stream must be closed, otherwise it is closed when the unit of work ends.
+   * 
+   * @param query Query created by the EntityManager of this unit of work.
+   * @param fetchSize Number of rows fetched from the database at a time.
+   * @param clearEvery Number of rows after which the entities streamed are detached, 0 to never detach them.
+   * @return Sequential stream of the results.
+   * @throws IllegalStateException If work hasn't begun.
+   */
+  default <T> Stream<T> stream(final TypedQuery<T> query, final int fetchSize, final int clearEvery) {
+    checkArgument(fetchSize > 0, "fetchSize must be positive: %s", fetchSize);
+    checkArgument(clearEvery >= 0, "clearEvery must not be negative: %s", clearEvery);
+    final WorkContext context = getContext();
+    checkState(context != null, "Work hasn't begun!");
+
+    final Stream<T> stream = QueryStreams.stream(getEntityManager(), query, fetchSize, clearEvery);
+    context.closeOnEnd(stream);
+    return stream.onClose(() -> context.cancelCloseOnEnd(stream));
+  }
+
+  /**
+   * Runs a read-only task in another thread, in its own unit of work and transaction, rolled back once the task returns.
+   * 
+   * @param task Task reading through the given EntityManager.
+   * @param executor Executor running the task, e.g. a {@code ForkJoinPool}.
+   * @return Future completed with the result of the task.
+   */
+  default <T> CompletableFuture<T> readAsync(final Function<EntityManager, T> task, final Executor executor) {
+    return CompletableFuture.supplyAsync(() -> {
+      beginNew();
+      try {
+        final EntityManager em = getEntityManager();
+        em.setFlushMode(FlushModeType.COMMIT);
+        final EntityTransaction transaction = em.getTransaction();
+        transaction.begin();
+        try {
+          return task.apply(em);
+        } finally {
+          if (transaction.isActive()) {
+            transaction.rollback();
+          }
+        }
+      } finally {
+        end();
+      }
+    }, executor);
+  }
+
+  /**
+   * Runs read-only tasks in parallel, each as in {@link #readAsync(Function, Executor)}, waiting for all of them.
+   * 
+   * @param tasks Tasks reading through the given EntityManager.
+   * @param executor Executor running the tasks.
+   * @return The results, in the order of the tasks.
+   * @throws RuntimeException The exception thrown by a task, once all of them have finished.
+   */
+  default <T> List<T> readAll(final List<? extends Function<EntityManager, ? extends T>> tasks, final Executor executor) {
+    final List<CompletableFuture<? extends T>> futures = new ArrayList<>(tasks.size());
+    for (final Function<EntityManager, ? extends T> task : tasks) {
+      futures.add(readAsync(task, executor));
+    }
+
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+    } catch (final CompletionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw e;
+    }
+    final List<T> results = new ArrayList<>(futures.size());
+    for (final CompletableFuture<? extends T> future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
 }
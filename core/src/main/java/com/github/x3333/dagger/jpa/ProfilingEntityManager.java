@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import com.github.x3333.dagger.jpa.TransactionProfile.Calls;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EntityManager} of a transaction recording its calls, and the queries it creates, in a {@link TransactionProfile}, enabled by
+ * {@link JpaProperties#PROFILING_THRESHOLD}. When the transaction ends, each load or query executed more times than the threshold is
+ * logged as a likely N+1.
+ *
+ * <p>
+ * Like {@link BatchingEntityManager}, it is a dynamic proxy, so queries are proxied as the interface returned by the method creating them.
+ * Lazy loads don't go through the {@link EntityManager}, so they are not recorded.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class ProfilingEntityManager implements InvocationHandler {
+
+  private static final Logger logger = LoggerFactory.getLogger(ProfilingEntityManager.class);
+
+  /**
+   * Records the executions of a query, under the shape of the query.
+   */
+  private final class ProfiledQuery implements InvocationHandler {
+
+    private final Object delegate;
+    private final String shape;
+
+    ProfiledQuery(final Object delegate, final String shape) {
+      this.delegate = delegate;
+      this.shape = shape;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "ProfiledQuery{" + shape + "}";
+        case "getResultList":
+        case "getSingleResult":
+        case "executeUpdate":
+          return record(method, args, delegate, shape);
+        default:
+          final Object result = forward(method, args, delegate);
+          // Fluent setters return the query, keep handing out the proxy.
+          return result == delegate ? proxy : result;
+      }
+    }
+
+  }
+
+  private final EntityManager delegate;
+  private final String method;
+  private final int threshold;
+  private final EntityManager proxy;
+
+  private final Map<String, Calls> operations = new HashMap<>();
+  private final Map<String, Calls> shapes = new HashMap<>();
+  private boolean finished;
+
+  /**
+   * @param delegate EntityManager of the transaction.
+   * @param method Transactional method that begun the transaction.
+   * @param threshold Executions of the same shape above which a N+1 is reported.
+   */
+  ProfilingEntityManager(final EntityManager delegate, final String method, final int threshold) {
+    this.delegate = delegate;
+    this.method = method;
+    this.threshold = threshold;
+    this.proxy = (EntityManager) Proxy.newProxyInstance(ProfilingEntityManager.class.getClassLoader(), //
+        new Class<?>[] {EntityManager.class}, this);
+  }
+
+  //
+
+  /**
+   * @return The profiling EntityManager.
+   */
+  EntityManager entityManager() {
+    return proxy;
+  }
+
+  /**
+   * Stops recording and reports the shapes executed more times than the threshold.
+   *
+   * @return The profile of the transaction.
+   */
+  TransactionProfile finish() {
+    finished = true;
+    for (final Map.Entry<String, Calls> shape : shapes.entrySet()) {
+      if (shape.getValue().count > threshold) {
+        logger.warn("Possible N+1 in {}: {} executed {} times in one transaction", method, shape.getKey(), shape.getValue().count);
+      }
+    }
+    return new TransactionProfile(method, operations, shapes);
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "ProfilingEntityManager{delegate=" + delegate + "}";
+      case "find":
+        return record(method, args, delegate, "find " + ((Class<?>) args[0]).getName());
+      case "createQuery":
+      case "createNamedQuery":
+      case "createNativeQuery":
+        final Object query = record(method, args, delegate, null);
+        if (finished || !(query instanceof Query)) {
+          return query;
+        }
+        return Proxy.newProxyInstance(ProfilingEntityManager.class.getClassLoader(), //
+            new Class<?>[] {method.getReturnType()}, new ProfiledQuery(query, shape(method, args[0])));
+      default:
+        return record(method, args, delegate, null);
+    }
+  }
+
+  //
+
+  private static String shape(final Method method, final Object query) {
+    if (query instanceof CriteriaQuery) {
+      // Criteria queries can't be told apart without provider internals.
+      return "criteria " + ((CriteriaQuery<?>) query).getResultType().getName();
+    }
+    return "createNamedQuery".equals(method.getName()) ? "named query " + query : query.toString();
+  }
+
+  /**
+   * Forwards a call, recording it under its operation and, if not null, under a shape.
+   */
+  private Object record(final Method method, final Object[] args, final Object target, @Nullable final String shape) throws Throwable {
+    if (finished) {
+      return forward(method, args, target);
+    }
+
+    final long start = System.nanoTime();
+    try {
+      return forward(method, args, target);
+    } finally {
+      final long nanos = System.nanoTime() - start;
+      count(operations, method.getName(), nanos);
+      if (shape != null) {
+        count(shapes, shape, nanos);
+      }
+    }
+  }
+
+  private static Object forward(final Method method, final Object[] args, final Object target) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static void count(final Map<String, Calls> calls, final String key, final long nanos) {
+    final Calls current = calls.computeIfAbsent(key, k -> new Calls());
+    current.count++;
+    current.nanos += nanos;
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+/**
+ * How a {@link Transactional @Transactional} method relates to the transaction in progress, if any.
+ *
+ * <p>
+ * A transaction is in progress if begun by an intercepted method or on the {@code EntityManager} of the unit of work.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public enum Propagation {
+
+  /**
+   * Joins the transaction in progress, or begins a new one.
+   */
+  REQUIRED,
+
+  /**
+   * Always begins a new transaction, in a new unit of work with its own {@code EntityManager}. The unit of work in progress is suspended
+   * until the method returns.
+   */
+  REQUIRES_NEW,
+
+  /**
+   * Joins the transaction in progress, or runs without a transaction.
+   */
+  SUPPORTS,
+
+  /**
+   * Runs without a transaction. If one is in progress, the method runs in a new unit of work, with its own {@code EntityManager}, and the
+   * unit of work in progress is suspended until the method returns.
+   */
+  NOT_SUPPORTED,
+
+  /**
+   * Joins the transaction in progress, throws {@link javax.persistence.TransactionRequiredException} if there is none.
+   */
+  MANDATORY
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams query results through a forward-only cursor, see {@link JpaWork#stream(TypedQuery, int, int)}.
+ *
+ * <p>
+ * JPA 2.0 has no streaming, Hibernate 5.2+ queries have a {@code stream()} method, called reflectively as {@link BatchingEntityManager}
+ * does for the JDBC batch size. With other providers the results are read with {@code getResultList()}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class QueryStreams {
+
+  private static final Logger logger = LoggerFactory.getLogger(QueryStreams.class);
+
+  /**
+   * Fetch size hints of known providers, unknown hints are ignored by providers.
+   */
+  private static final String[] FETCH_SIZE_HINTS = {"org.hibernate.fetchSize", "eclipselink.jdbc.fetch-size"};
+
+  /**
+   * Streamed entities are not changed, so they don't need snapshots for dirty-checking.
+   */
+  private static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+
+  private static final ClassValue<Optional<Method>> STREAM_METHODS = new ClassValue<Optional<Method>>() {
+
+    @Override
+    protected Optional<Method> computeValue(final Class<?> type) {
+      try {
+        final Method stream = type.getMethod("stream");
+        return Stream.class.isAssignableFrom(stream.getReturnType()) ? Optional.of(stream) : Optional.empty();
+      } catch (final NoSuchMethodException e) {
+        return Optional.empty();
+      }
+    }
+
+  };
+
+  private QueryStreams() {}
+
+  //
+
+  static <T> Stream<T> stream(final EntityManager em, final TypedQuery<T> query, final int fetchSize, final int clearEvery) {
+    for (final String hint : FETCH_SIZE_HINTS) {
+      query.setHint(hint, fetchSize);
+    }
+    query.setHint(READ_ONLY_HINT, true);
+
+    final Object providerQuery = providerQuery(query);
+    final Optional<Method> streamMethod = STREAM_METHODS.get(providerQuery.getClass());
+    if (!streamMethod.isPresent()) {
+      logger.warn("{} can't be streamed, reading all results", providerQuery.getClass().getName());
+      return query.getResultList().stream();
+    }
+
+    final Stream<?> rows;
+    try {
+      rows = (Stream<?>) streamMethod.get().invoke(providerQuery);
+    } catch (final IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    } catch (final InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new PersistenceException(cause);
+    }
+
+    final Iterator<T> clearing = new ClearingIterator<>(em, rows.iterator(), clearEvery);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(clearing, Spliterator.ORDERED), false).onClose(rows::close);
+  }
+
+  /**
+   * The query of the provider, bypassing wrappers such as {@link ProfilingEntityManager} queries.
+   */
+  private static Object providerQuery(final TypedQuery<?> query) {
+    try {
+      return query.unwrap(TypedQuery.class);
+    } catch (final PersistenceException e) {
+      return query;
+    }
+  }
+
+  /**
+   * Detaches the entities handed out every {@code clearEvery} rows, before reading the next row, so the one being read is not. Only those,
+   * the persistence context may hold changes of the unit of work that are not flushed yet.
+   */
+  private static final class ClearingIterator<T> implements Iterator<T> {
+
+    private final EntityManager em;
+    private final Iterator<?> rows;
+    private final int clearEvery;
+    /**
+     * Rows handed out since the last detach.
+     */
+    private final Object[] handedOut;
+    private final Set<Class<?>> notEntities = new HashSet<>();
+
+    private int read;
+    private boolean advanced;
+
+    ClearingIterator(final EntityManager em, final Iterator<?> rows, final int clearEvery) {
+      this.em = em;
+      this.rows = rows;
+      this.clearEvery = clearEvery;
+      this.handedOut = new Object[clearEvery];
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!advanced) {
+        if (clearEvery > 0 && read > 0 && read % clearEvery == 0) {
+          detachHandedOut();
+        }
+        advanced = true;
+      }
+      return rows.hasNext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      advanced = false;
+      Object row = rows.next();
+      // Some Hibernate versions return single selections as 1-element rows, unlike getResultList().
+      if (row instanceof Object[] && ((Object[]) row).length == 1) {
+        row = ((Object[]) row)[0];
+      }
+      if (clearEvery > 0) {
+        handedOut[read % clearEvery] = row;
+      }
+      read++;
+      return (T) row;
+    }
+
+    //
+
+    private void detachHandedOut() {
+      for (int i = 0; i < handedOut.length; i++) {
+        final Object row = handedOut[i];
+        handedOut[i] = null;
+        if (row instanceof Object[]) {
+          for (final Object element : (Object[]) row) {
+            detach(element);
+          }
+        } else {
+          detach(row);
+        }
+      }
+    }
+
+    private void detach(@Nullable final Object element) {
+      if (element == null || notEntities.contains(element.getClass())) {
+        return;
+      }
+      try {
+        if (em.contains(element)) {
+          em.detach(element);
+        }
+      } catch (final IllegalArgumentException e) {
+        // Not an entity, e.g. a scalar column of the row.
+        notEntities.add(element.getClass());
+      }
+    }
+
+  }
+
+}
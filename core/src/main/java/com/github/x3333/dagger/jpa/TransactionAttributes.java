@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.SQLException;
+
+import javax.persistence.RollbackException;
+
+/**
+ * Attributes of a {@link Transactional @Transactional} method, resolved once from its annotation.
+ *
+ * <p>
+ * Rollback verdicts are memoized per exception type, so deciding whether to roll back does not touch the annotation again.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class TransactionAttributes {
+
+  private final String method;
+  private final Class<? extends Exception>[] rollbackOn;
+  private final Propagation propagation;
+  private final boolean readOnly;
+  private final String unit;
+  private final int batchSize;
+  private final int retries;
+  private final Class<? extends Exception>[] retryOn;
+  private final long backoff;
+  private final long timeoutMillis;
+  private final CacheMode cacheMode;
+  private final String priority;
+
+  private final ClassValue<Boolean> rollbackVerdicts = new ClassValue<Boolean>() {
+
+    @Override
+    protected Boolean computeValue(final Class<?> exceptionType) {
+      for (final Class<? extends Exception> rollbackException : rollbackOn) {
+        if (rollbackException.isAssignableFrom(exceptionType)) {
+          return Boolean.TRUE;
+        }
+      }
+      return Boolean.FALSE;
+    }
+
+  };
+
+  private final ClassValue<Boolean> retryVerdicts = new ClassValue<Boolean>() {
+
+    @Override
+    protected Boolean computeValue(final Class<?> exceptionType) {
+      for (final Class<? extends Exception> retryException : retryOn) {
+        if (retryException.isAssignableFrom(exceptionType)) {
+          return Boolean.TRUE;
+        }
+      }
+      return Boolean.FALSE;
+    }
+
+  };
+
+  TransactionAttributes(final String method, final Transactional transactional) {
+    this.method = method;
+    this.rollbackOn = transactional.rollbackOn();
+    this.propagation = transactional.propagation();
+    this.readOnly = transactional.readOnly();
+    this.unit = transactional.unit();
+    this.batchSize = transactional.batchSize();
+    checkArgument(batchSize >= 0, "batchSize must not be negative: %s", batchSize);
+    this.retries = transactional.retries();
+    checkArgument(retries >= 0, "retries must not be negative: %s", retries);
+    this.retryOn = transactional.retryOn();
+    this.backoff = transactional.backoff();
+    checkArgument(backoff >= 0, "backoff must not be negative: %s", backoff);
+    this.timeoutMillis = transactional.timeoutMillis();
+    checkArgument(timeoutMillis >= 0, "timeoutMillis must not be negative: %s", timeoutMillis);
+    this.cacheMode = transactional.cacheMode();
+    this.priority = transactional.priority();
+  }
+
+  //
+
+  /**
+   * @return The method, {@code SimpleClassName.methodName}.
+   */
+  String method() {
+    return method;
+  }
+
+  /**
+   * Tells if the exception thrown by the method must roll back the transaction.
+   *
+   * @param e Exception thrown by the method.
+   * @return true if it is, or is a subtype of, one of {@link Transactional#rollbackOn()}.
+   */
+  boolean rollbackOn(final Exception e) {
+    return rollbackVerdicts.get(e.getClass());
+  }
+
+  /**
+   * @return The {@link Transactional#propagation() propagation}.
+   */
+  Propagation propagation() {
+    return propagation;
+  }
+
+  /**
+   * @return true if the transaction is {@link Transactional#readOnly() read-only}.
+   */
+  boolean readOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return The {@link Transactional#unit() unit name}.
+   */
+  String unit() {
+    return unit;
+  }
+
+  /**
+   * @return The {@link Transactional#batchSize() batch size}, 0 if not batching.
+   */
+  int batchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return The number of {@link Transactional#retries() retries}.
+   */
+  int retries() {
+    return retries;
+  }
+
+  /**
+   * @return The {@link Transactional#backoff() backoff} in milliseconds.
+   */
+  long backoff() {
+    return backoff;
+  }
+
+  /**
+   * @return The {@link Transactional#timeoutMillis() timeout} in milliseconds, 0 if none.
+   */
+  long timeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * @return The {@link Transactional#cacheMode() cache mode}.
+   */
+  CacheMode cacheMode() {
+    return cacheMode;
+  }
+
+  /**
+   * @return The {@link Transactional#priority() priority class}, empty for the default.
+   */
+  String priority() {
+    return priority;
+  }
+
+  /**
+   * Tells if the method must be retried after failing with an exception. Only rolled back transactions can be retried: exceptions from
+   * commit, or thrown by the method and {@link #rollbackOn(Exception) rolling back}.
+   *
+   * @param e Exception thrown by the method or the commit.
+   * @return true if it, or a cause, is one of {@link Transactional#retryOn()} or a transaction rollback SQL state.
+   */
+  boolean retryOn(final Throwable e) {
+    if (!(e instanceof Exception) || !(e instanceof RollbackException || rollbackOn((Exception) e))) {
+      return false;
+    }
+    for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+      if (retryVerdicts.get(cause.getClass())) {
+        return true;
+      }
+      if (cause instanceof SQLException) {
+        // Class 40, transaction rollback: serialization failure, deadlock.
+        final String sqlState = ((SQLException) cause).getSQLState();
+        if (sqlState != null && sqlState.startsWith("40")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import java.util.Map;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Calls made through the {@code EntityManager} of a transaction, recorded when {@link JpaProperties#PROFILING_THRESHOLD profiling} is
+ * enabled.
+ *
+ * <p>
+ * Operations are the {@code EntityManager} and query methods called, e.g. {@code find}, {@code createQuery} or {@code getResultList}.
+ * Shapes are what was loaded: {@code find} plus the entity name, or the query executed, its JPQL, SQL or named query.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class TransactionProfile {
+
+  /**
+   * Number of calls and the time spent in them.
+   */
+  public static final class Calls {
+
+    int count;
+    long nanos;
+
+    Calls() {}
+
+    //
+
+    public int getCount() {
+      return count;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)//
+          .add("count", count)//
+          .add("nanos", nanos).toString();
+    }
+
+  }
+
+  private final String method;
+  private final Map<String, Calls> operations;
+  private final Map<String, Calls> shapes;
+
+  TransactionProfile(final String method, final Map<String, Calls> operations, final Map<String, Calls> shapes) {
+    this.method = method;
+    this.operations = ImmutableMap.copyOf(operations);
+    this.shapes = ImmutableMap.copyOf(shapes);
+  }
+
+  //
+
+  /**
+   * @return Transactional method that begun the transaction.
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return Calls per operation.
+   */
+  public Map<String, Calls> getOperations() {
+    return operations;
+  }
+
+  /**
+   * @return Loads and query executions per shape.
+   */
+  public Map<String, Calls> getShapes() {
+    return shapes;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("method", method)//
+        .add("operations", operations)//
+        .add("shapes", shapes).toString();
+  }
+
+}
@@ -20,6 +20,9 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PessimisticLockException;
+
 /**
  * Any method or class marked with this annotation will be considered for transactionality. Marking a method {@code @Transactional} will
  * start a new transaction before the method executes and commit it after the method returns.
@@ -31,6 +34,10 @@ import java.lang.annotation.Target;
  * <p>
  * By default, all {@link Exception} will trigger a rollback.
  * 
+ * <p>
+ * A method beginning the unit of work and returning a {@code CompletionStage} keeps it open until the stage completes, see
+ * {@link JpaProperties#ASYNC_EXECUTOR}.
+ * 
  * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
  */
 @Documented
@@ -48,4 +55,77 @@ public @interface Transactional {
    */
   Class<? extends Exception>[] rollbackOn() default Exception.class;
 
+  /**
+   * How the method relates to the transaction in progress.
+   * 
+   * @return The propagation. By default {@link Propagation#REQUIRED}.
+   */
+  Propagation propagation() default Propagation.REQUIRED;
+
+  /**
+   * Read-only transaction, flushed only if the method flushes. Only applies when the method begins the transaction.
+   * 
+   * @return true if the transaction is read-only. By default false.
+   */
+  boolean readOnly() default false;
+
+  /**
+   * Persistence unit of the transaction, as bound in the {@code Map<String, JpaServiceImpl>} multibinding, or {@code JpaUnits.READ} for
+   * any of the {@link JpaProperties#READ_UNITS}.
+   * 
+   * @return The unit name. By default empty, the primary unit, or a read unit for {@link #readOnly()} methods.
+   */
+  String unit() default "";
+
+  /**
+   * Retries of the method, in a new transaction, when it fails with one of {@link #retryOn()} or a serialization failure. Only applies
+   * when the method begins the transaction.
+   * 
+   * @return The number of retries. By default 0.
+   */
+  int retries() default 0;
+
+  /**
+   * Exceptions, thrown or as a cause, that make the method be retried.
+   * 
+   * @return A list of exceptions to retry on. By default {@link OptimisticLockException} and {@link PessimisticLockException}.
+   */
+  Class<? extends Exception>[] retryOn() default {OptimisticLockException.class, PessimisticLockException.class};
+
+  /**
+   * Base of the random, exponential, wait before a retry.
+   * 
+   * @return The backoff in milliseconds. By default 50.
+   */
+  long backoff() default 50;
+
+  /**
+   * Timeout of the transaction, which is rolled back if it doesn't commit in time. Also sets the query and lock timeouts.
+   * 
+   * @return The timeout in milliseconds. By default 0, no timeout.
+   */
+  long timeoutMillis() default 0;
+
+  /**
+   * Writes per batch. The persistence context is flushed and cleared every {@code batchSize} writes. Only applies when the method begins
+   * a transaction that is not {@link #readOnly()}.
+   * 
+   * @return The number of writes per batch. By default 0, no batching.
+   */
+  int batchSize() default 0;
+
+  /**
+   * How the method uses the second-level cache.
+   * 
+   * @return The cache mode. By default {@link CacheMode#DEFAULT}.
+   */
+  CacheMode cacheMode() default CacheMode.DEFAULT;
+
+  /**
+   * Priority class of the units of work begun by the method, limited by {@link JpaProperties#WORK_LIMITS}.
+   * 
+   * @return The priority class. By default empty, the default class.
+   */
+  String priority() default "";
+
 }
@@ -13,105 +13,439 @@
 
 package com.github.x3333.dagger.jpa;
 
-import static java.lang.Boolean.TRUE;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+import com.github.x3333.dagger.jpa.impl.JpaUnits;
 
-import com.github.x3333.dagger.aop.MethodInterceptor;
-import com.github.x3333.dagger.aop.MethodInvocation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
+import javax.persistence.TransactionRequiredException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Make a intercepted method transactional using a {@link JpaService}.
+ * Make a intercepted method transactional using a {@link JpaService}. With more than one persistence unit, the method runs on the unit
+ * selected by {@link JpaUnits}.
  * 
+ * <p>
+ * It is called by the {@code Transactional_} subclasses generated by {@code dagger-jpa-compiler}, with the attributes of each method
+ * resolved once in a {@link TransactionalMethod}. Intercepted methods called inside a transaction begun by another intercepted method join
+ * it. {@link Propagation#REQUIRES_NEW} and {@link Propagation#NOT_SUPPORTED} suspend the unit of work in progress with
+ * {@link JpaWork#beginNew()}.
+ *
  * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
  */
-public final class TransactionalInterceptor implements MethodInterceptor {
+@Singleton
+public final class TransactionalInterceptor {
 
   private final Logger logger = LoggerFactory.getLogger(TransactionalInterceptor.class);
 
-  private final JpaWork work;
-  private final ThreadLocal<Boolean> shouldClose = new ThreadLocal<>();
+  private final JpaUnits units;
 
   //
 
   @Inject
-  public TransactionalInterceptor(final JpaWork work) {
-    this.work = work;
+  public TransactionalInterceptor(final JpaUnits units) {
+    this.units = units;
   }
 
   //
 
-  @Override
-  @SuppressWarnings("unchecked")
-  public <T> T invoke(final MethodInvocation invocation) throws Throwable {
-    if (!work.hasBegun()) {
-      work.begin();
-      shouldClose.set(true);
+  /**
+   * Invokes an intercepted method. Its attributes were resolved when the generated interceptor was loaded, and the body calls the method
+   * directly.
+   *
+   * @param method The resolved method.
+   * @param body Calls the method of the intercepted class.
+   * @return What the method returned.
+   * @throws Throwable What the method, or the transaction, threw.
+   */
+  public <T> T invoke(final TransactionalMethod method, final TransactionalMethod.Body<T> body) throws Throwable {
+    final TransactionAttributes attributes = method.attributes();
+    if (!units.isRouting()) {
+      return invoke(units.primary(), attributes, body);
     }
 
-    final EntityManager em = work.getEntityManager();
-    final EntityTransaction transaction = em.getTransaction();
+    final JpaServiceImpl unit = units.route(attributes.unit(), attributes.readOnly());
+    final long entered = units.enter(unit);
+    try {
+      return invoke(unit, attributes, body);
+    } finally {
+      units.exit(unit, entered);
+    }
+  }
 
-    // If there is an active transaction, join.
-    if (transaction.isActive()) {
-      logger.trace("Active transaction in place");
-      return (T) invocation.proceed();
+  /**
+   * Joins the transaction in progress if the method has nothing to apply to it, in which case the caller runs the method and then calls
+   * {@link #leave()}. Otherwise the caller calls {@link #invoke(TransactionalMethod, TransactionalMethod.Body)}.
+   *
+   * @param method The resolved method.
+   * @return true if the transaction was joined.
+   */
+  public boolean join(final TransactionalMethod method) {
+    if (!method.joinsPlainly() || units.isRouting()) {
+      return false;
+    }
+    final JpaServiceImpl work = units.primary();
+    final WorkContext current = work.getContext();
+    if (current == null || !current.inTransaction() || current.transaction != null && current.transaction.deadline() != 0) {
+      return false;
     }
 
-    transaction.begin();
-    logger.trace("Transaction begun");
+    final JpaMetrics metrics = work.getMetrics();
+    if (metrics != null) {
+      metrics.transactionJoined(method.attributes().method());
+    }
+    current.depth++;
+    return true;
+  }
 
-    final T result;
+  /**
+   * Leaves a transaction joined by {@link #join(TransactionalMethod)}.
+   */
+  public void leave() {
+    units.primary().getContext().depth--;
+  }
+
+  //
+
+  private <T> T invoke(//
+      final JpaServiceImpl work, //
+      final TransactionAttributes attributes, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    final WorkContext current = work.getContext();
+
+    if (current != null && current.inTransaction() && attributes.propagation() != Propagation.REQUIRES_NEW
+        && attributes.propagation() != Propagation.NOT_SUPPORTED) {
+      final InterceptedTransaction transaction = current.transaction;
+      return join(current, transaction, joinsWithAttributes(transaction, attributes), attributes, work.getMetrics(), body);
+    }
+
+    return invokeResolved(work, current, attributes, body);
+  }
+
+  /**
+   * Runs a method that doesn't join the transaction of an intercepted method, according to its propagation.
+   */
+  private <T> T invokeResolved(//
+      final JpaServiceImpl work, //
+      @Nullable final WorkContext current, //
+      final TransactionAttributes attributes, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    final JpaMetrics metrics = work.getMetrics();
+    switch (attributes.propagation()) {
+      case REQUIRES_NEW:
+        if (current != null) {
+          return invokeInNewWork(work, true, attributes.priority(), attributes, metrics, body);
+        }
+        break;
+      case NOT_SUPPORTED:
+        if (inTransaction(current)) {
+          return invokeInNewWork(work, true, attributes.priority(), null, metrics, body);
+        }
+        return invokeWithoutTransaction(work, current, attributes.priority(), body);
+      case SUPPORTS:
+        if (!inTransaction(current)) {
+          return invokeWithoutTransaction(work, current, attributes.priority(), body);
+        }
+        break;
+      case MANDATORY:
+        if (!inTransaction(current)) {
+          throw new TransactionRequiredException("No transaction in progress for " + attributes.method());
+        }
+        break;
+      default:
+        break;
+    }
+
+    // Outermost boundary, the transaction and the EntityManager are ours.
+    if (current == null) {
+      return invokeInNewWork(work, false, attributes.priority(), attributes, metrics, body);
+    }
+
+    current.depth = 1;
     try {
-      logger.trace("Invoking");
-      result = (T) invocation.proceed();
-    } catch (final Exception e) {
-      final boolean rollback = doRollback(transaction, e, invocation.annotation(Transactional.class));
-      if (rollback) {
-        logger.trace("Reverting", e);
-        transaction.rollback();
-      } else {
-        logger.trace("Committing", e);
-        transaction.commit();
+      // If there is an active transaction begun outside an intercepted method, join.
+      if (activeTransaction(current)) {
+        logger.trace("Active transaction in place");
+        if (metrics != null) {
+          metrics.transactionJoined(attributes.method());
+        }
+        return body.proceed();
       }
-      throw e; // Continue exception flow
+
+      return doInNewTransaction(work, current, false, attributes, body);
     } finally {
-      // Close the EM in case we started work and transaction is not active anymore.
-      if (TRUE.equals(shouldClose.get()) && !transaction.isActive()) {
-        shouldClose.remove();
-        work.end();
+      current.depth = 0;
+    }
+  }
+
+  /**
+   * Tells if a method joining a transaction has a cache mode or a deadline to apply.
+   */
+  private static boolean joinsWithAttributes(@Nullable final InterceptedTransaction transaction, final TransactionAttributes attributes) {
+    return attributes.cacheMode() != CacheMode.DEFAULT
+        || transaction != null && (transaction.deadline() != 0 || attributes.timeoutMillis() != 0);
+  }
+
+  private static <T> T join(//
+      final WorkContext context, //
+      @Nullable final InterceptedTransaction transaction, //
+      final boolean withAttributes, //
+      final TransactionAttributes attributes, //
+      @Nullable final JpaMetrics metrics, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    if (metrics != null) {
+      metrics.transactionJoined(attributes.method());
+    }
+    if (withAttributes) {
+      return joinWithAttributes(context, transaction, attributes, body);
+    }
+    context.depth++;
+    try {
+      return body.proceed();
+    } finally {
+      context.depth--;
+    }
+  }
+
+  /**
+   * Joins a transaction applying the cache mode of the method, if the EntityManager is open, and its deadline, giving the method the
+   * remaining time, or less if the method has its own timeout.
+   *
+   * @param transaction Transaction begun by an intercepted method, null if begun outside.
+   */
+  private static <T> T joinWithAttributes(//
+      final WorkContext context, //
+      @Nullable final InterceptedTransaction transaction, //
+      final TransactionAttributes attributes, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    final long outerDeadline = transaction != null ? transaction.deadline() : 0;
+    long deadline = outerDeadline;
+    if (transaction != null && attributes.timeoutMillis() != 0) {
+      final long methodDeadline = InterceptedTransaction.deadlineAfter(attributes.timeoutMillis());
+      deadline = outerDeadline == 0 || methodDeadline - outerDeadline < 0 ? methodDeadline : outerDeadline;
+    }
+    final EntityManager em = attributes.cacheMode() != CacheMode.DEFAULT && context.hasEntityManager() ? context.getEntityManager() : null;
+
+    if (deadline != 0) {
+      transaction.deadline(deadline);
+    }
+    final Object[] previousCacheModes = em != null ? InterceptedTransaction.applyCacheModes(em, attributes.cacheMode()) : null;
+    context.depth++;
+    try {
+      return body.proceed();
+    } finally {
+      context.depth--;
+      if (previousCacheModes != null) {
+        InterceptedTransaction.restoreCacheModes(em, previousCacheModes);
+      }
+      if (deadline != 0) {
+        if (deadline != outerDeadline && InterceptedTransaction.expired(deadline)) {
+          transaction.timedOut(attributes.method());
+        }
+        transaction.deadline(outerDeadline);
       }
     }
+  }
+
+  /**
+   * Runs in a new unit of work, suspending the one in progress if any, in a new transaction or, if attributes is null, without a
+   * transaction. Failed transactions are retried in a new unit of work according to {@link Transactional#retries()}.
+   */
+  private <T> T invokeInNewWork(//
+      final JpaServiceImpl work, //
+      final boolean suspend, //
+      final String priority, //
+      @Nullable final TransactionAttributes attributes, //
+      @Nullable final JpaMetrics metrics, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    if (attributes == null || attributes.retries() == 0) {
+      return invokeInNewWorkOnce(work, suspend, priority, attributes, body);
+    }
 
+    for (int attempt = 0;; attempt++) {
+      try {
+        return invokeInNewWorkOnce(work, suspend, priority, attributes, body);
+      } catch (final Throwable e) {
+        if (attempt == attributes.retries() || !attributes.retryOn(e) || !backoff(attributes.backoff(), attempt)) {
+          throw e;
+        }
+        logger.debug("Retrying {}, attempt {} of {}: {}", attributes.method(), attempt + 1, attributes.retries(), e.toString());
+        if (metrics != null) {
+          metrics.transactionRetried(attributes.method());
+        }
+      }
+    }
+  }
+
+  private <T> T invokeInNewWorkOnce(//
+      final JpaServiceImpl work, //
+      final boolean suspend, //
+      final String priority, //
+      @Nullable final TransactionAttributes attributes, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    if (suspend) {
+      logger.trace("Suspending work");
+      work.beginNew(priority);
+    } else {
+      work.begin(priority);
+    }
+    final WorkContext context = work.getContext();
     try {
-      logger.trace("Committing");
-      transaction.commit();
+      if (attributes == null) {
+        return body.proceed();
+      }
+      context.depth = 1;
+      return doInNewTransaction(work, context, true, attributes, body);
     } finally {
-      // Close the EM if we begin the work
-      if (TRUE.equals(shouldClose.get())) {
-        shouldClose.remove();
+      // Close the EM as we begin the work, unless detached to end with an asynchronous result
+      if (work.getContext() == context) {
+        context.depth = 0;
         work.end();
       }
     }
+  }
+
+  /**
+   * Sleeps before a retry, a random time up to {@code backoff * 2^attempt}.
+   *
+   * @return false if interrupted.
+   */
+  private static boolean backoff(final long backoff, final int attempt) {
+    if (backoff == 0) {
+      return true;
+    }
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong((backoff << Math.min(attempt, 10)) + 1));
+      return true;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static <T> T invokeWithoutTransaction(//
+      final JpaServiceImpl work, //
+      @Nullable final WorkContext current, //
+      final String priority, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    if (current != null) {
+      return body.proceed();
+    }
+    work.begin(priority);
+    try {
+      return body.proceed();
+    } finally {
+      work.end();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T doInNewTransaction(//
+      final JpaServiceImpl work, //
+      final WorkContext context, //
+      final boolean ownsEntityManager, //
+      final TransactionAttributes attributes, //
+      final TransactionalMethod.Body<T> body) throws Throwable {
+    context.method = attributes.method();
+    final InterceptedTransaction transaction = new InterceptedTransaction(context, ownsEntityManager, attributes, work.getMetrics(),
+        work.getProfilingThreshold());
+    context.transaction = transaction;
+    if (context.hasEntityManager()) {
+      transaction.begin(context.getEntityManager());
+    } // Lazy work otherwise, the transaction begins with the EntityManager, if the method ever asks for it.
+
+    final T result;
+    try {
+      logger.trace("Invoking");
+      result = body.proceed();
+    } catch (final Throwable e) {
+      context.transaction = null;
+      transaction.fail(e);
+      throw e; // Continue exception flow
+    }
+
+    if (ownsEntityManager && result instanceof CompletionStage) {
+      return (T) completeAsync(work, context, transaction, (CompletionStage<?>) result);
+    }
+
+    logger.trace("Committing");
+    context.transaction = null;
+    transaction.commit();
 
     return result;
   }
 
-  private boolean doRollback(//
-      final EntityTransaction transaction, //
-      final Exception e, //
-      final Transactional transactional) {
-    for (final Class<? extends Exception> rollbackException : transactional.rollbackOn()) {
-      if (rollbackException.isInstance(e)) {
-        return true;
+  /**
+   * Keeps the work open until the stage returned by the method completes, detaching it from the current thread, then commits or rolls back
+   * according to the outcome, and ends the work, on the {@link JpaServiceImpl#getAsyncExecutor() async executor}.
+   *
+   * @return Future completed once the work has ended, with the outcome of the stage, or the failure of the commit.
+   */
+  private <T> CompletableFuture<T> completeAsync(//
+      final JpaServiceImpl work, //
+      final WorkContext context, //
+      final InterceptedTransaction transaction, //
+      final CompletionStage<T> stage) {
+    logger.trace("Detaching work until completion");
+    work.detachCurrent();
+
+    final CompletableFuture<T> completion = new CompletableFuture<>();
+    final BiConsumer<T, Throwable> end = (value, failure) -> {
+      Throwable error = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+      try {
+        try {
+          context.transaction = null;
+          if (error == null) {
+            logger.trace("Committing");
+            transaction.commit();
+          } else {
+            transaction.fail(error);
+          }
+        } finally {
+          context.depth = 0;
+          work.endDetached(context);
+        }
+      } catch (final RuntimeException | Error e) {
+        if (error == null) {
+          error = e;
+        } else {
+          error.addSuppressed(e);
+        }
+      }
+
+      if (error == null) {
+        completion.complete(value);
+      } else {
+        completion.completeExceptionally(error);
       }
+    };
+
+    final Executor executor = work.getAsyncExecutor();
+    if (executor == null) {
+      stage.whenComplete(end);
+    } else {
+      stage.whenCompleteAsync(end, executor);
     }
-    return false;
+    return completion;
+  }
+
+  private static boolean inTransaction(@Nullable final WorkContext context) {
+    return context != null && (context.inTransaction() || activeTransaction(context));
+  }
+
+  private static boolean activeTransaction(final WorkContext context) {
+    return context.hasEntityManager() && context.getEntityManager().getTransaction().isActive();
   }
 
 }
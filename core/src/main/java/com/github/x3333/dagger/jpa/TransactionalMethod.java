@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Method;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A {@link Transactional @Transactional} method resolved once, when the interceptor generated for its class by {@code dagger-jpa-compiler}
+ * is loaded. The generated interceptor keeps it in a constant, {@link TransactionalInterceptor#join(TransactionalMethod) joins} the
+ * transaction in progress when it can and otherwise calls
+ * {@link TransactionalInterceptor#invoke(TransactionalMethod, TransactionalMethod.Body)} with a direct call to the method of its superclass.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class TransactionalMethod {
+
+  /**
+   * Body of an intercepted method, calling the method of the intercepted class.
+   *
+   * @param <T> Type returned by the method, {@link Void} for void methods.
+   */
+  @FunctionalInterface
+  public interface Body<T> {
+
+    T proceed() throws Throwable;
+
+  }
+
+  private final TransactionAttributes attributes;
+  private final boolean joinsPlainly;
+
+  private TransactionalMethod(final TransactionAttributes attributes) {
+    this.attributes = attributes;
+    this.joinsPlainly = attributes.propagation() != Propagation.REQUIRES_NEW && attributes.propagation() != Propagation.NOT_SUPPORTED
+        && attributes.cacheMode() == CacheMode.DEFAULT && attributes.timeoutMillis() == 0;
+  }
+
+  /**
+   * Resolves a {@link Transactional @Transactional} method.
+   *
+   * @param type Class declaring the method.
+   * @param name Method name.
+   * @param parameterTypes Parameter types of the method.
+   * @return The resolved method.
+   * @throws IllegalArgumentException if the method doesn't exist or is not annotated.
+   */
+  public static TransactionalMethod of(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+    final Method method;
+    try {
+      method = type.getDeclaredMethod(name, parameterTypes);
+    } catch (final NoSuchMethodException e) {
+      throw new IllegalArgumentException("Unknown method " + type.getName() + "." + name, e);
+    }
+    final Transactional transactional = method.getAnnotation(Transactional.class);
+    checkArgument(transactional != null, "%s.%s is not @Transactional", type.getName(), name);
+    return new TransactionalMethod(new TransactionAttributes(type.getSimpleName() + "." + name, transactional));
+  }
+
+  //
+
+  TransactionAttributes attributes() {
+    return attributes;
+  }
+
+  /**
+   * @return true if the method joins a transaction in progress without applying anything to it.
+   */
+  boolean joinsPlainly() {
+    return joinsPlainly;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("method", attributes.method()).toString();
+  }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * State of a JPA unit of work, from {@link JpaWork#begin()} to {@link JpaWork#end()}.
+ *
+ * <p>
+ * A context is used by one thread at a time. It is bound to the current thread by {@link JpaWork#begin()}, through a
+ * {@link WorkContextStore}, and can be handed to another thread with {@link JpaWork#detach()} and {@link JpaWork#attach(WorkContext)}.
+ * State kept per thread, e.g. by the watchdog or the routing across persistence units, is kept here too, so threads don't need thread
+ * locals of their own.
+ *
+ * <p>
+ * Contexts are created by the {@link JpaWork} implementations, applications only hand them from {@link JpaWork#detach()} to
+ * {@link JpaWork#attach(WorkContext)}.
+ *
+ * <p>
+ * A lazy context creates its EntityManager on the first {@link #getEntityManager()}, so work that never uses it never opens it.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class WorkContext {
+
+  private static final Logger logger = LoggerFactory.getLogger(WorkContext.class);
+
+  @Nullable
+  private EntityManager entityManager;
+  @Nullable
+  private final Supplier<EntityManager> entityManagerFactory;
+  private final long begunAt;
+  @Nullable
+  private final WorkContext suspended;
+
+  /**
+   * Number of intercepted methods running inside the transaction begun by {@link TransactionalInterceptor}, 0 if there is none.
+   */
+  int depth;
+
+  /**
+   * EntityManager handed out in the transaction in progress, if it wraps the one of this unit of work: {@link Transactional#batchSize()
+   * batching} or {@link JpaProperties#PROFILING_THRESHOLD profiling}.
+   */
+  @Nullable
+  EntityManager transactionEntityManager;
+
+  /**
+   * Transactional method that last begun a transaction in this unit of work, if any.
+   */
+  @Nullable
+  volatile String method;
+
+  /**
+   * Transaction begun by {@link TransactionalInterceptor} in this unit of work, if any. In lazy work, it begins when the EntityManager is
+   * created.
+   */
+  @Nullable
+  InterceptedTransaction transaction;
+
+  @Nullable
+  private List<AutoCloseable> resources;
+  @Nullable
+  private Runnable permit;
+  @Nullable
+  private volatile Thread thread;
+  private long enteredOrder;
+
+  /**
+   * Created by {@link JpaWork} implementations when work begins.
+   *
+   * @param entityManager EntityManager of this unit of work.
+   */
+  public WorkContext(final EntityManager entityManager) {
+    this(entityManager, null);
+  }
+
+  /**
+   * Created by {@link JpaWork} implementations when work begins on top of other work, see {@link JpaWork#beginNew()}.
+   *
+   * @param entityManager EntityManager of this unit of work.
+   * @param suspended Unit of work suspended by this one, null if none.
+   */
+  public WorkContext(final EntityManager entityManager, @Nullable final WorkContext suspended) {
+    this.entityManager = checkNotNull(entityManager);
+    this.entityManagerFactory = null;
+    this.begunAt = System.nanoTime();
+    this.suspended = suspended;
+  }
+
+  /**
+   * Created by {@link JpaWork} implementations when lazy work begins.
+   *
+   * @param entityManagerFactory Creates the EntityManager of this unit of work, on the first {@link #getEntityManager()}.
+   * @param suspended Unit of work suspended by this one, null if none.
+   */
+  public WorkContext(final Supplier<EntityManager> entityManagerFactory, @Nullable final WorkContext suspended) {
+    this.entityManager = null;
+    this.entityManagerFactory = checkNotNull(entityManagerFactory);
+    this.begunAt = System.nanoTime();
+    this.suspended = suspended;
+  }
+
+  //
+
+  /**
+   * @return The EntityManager of this unit of work, created if lazy and not created yet.
+   */
+  public EntityManager getEntityManager() {
+    EntityManager em = entityManager;
+    if (em == null) {
+      em = entityManager = checkNotNull(entityManagerFactory.get());
+      final InterceptedTransaction pending = transaction;
+      if (pending != null && !pending.isBegun()) {
+        pending.begin(em);
+      }
+    }
+    return em;
+  }
+
+  /**
+   * @return true if the EntityManager of this unit of work has been created, always true if not lazy.
+   */
+  public boolean hasEntityManager() {
+    return entityManager != null;
+  }
+
+  /**
+   * The EntityManager handed to the application by {@link JpaWork#getEntityManager()}, batching writes inside a
+   * {@link Transactional#batchSize() batch} transaction and recording calls when {@link JpaProperties#PROFILING_THRESHOLD profiling}.
+   *
+   * @return The wrapping EntityManager in such a transaction, {@link #getEntityManager()} otherwise.
+   */
+  public EntityManager getCurrentEntityManager() {
+    final EntityManager em = getEntityManager();
+    return transactionEntityManager != null ? transactionEntityManager : em;
+  }
+
+  /**
+   * @return When this unit of work has begun, in {@link System#nanoTime()} time.
+   */
+  public long getBegunAt() {
+    return begunAt;
+  }
+
+  /**
+   * @return The unit of work suspended by this one, resumed when this one ends, null if none.
+   */
+  @Nullable
+  public WorkContext getSuspended() {
+    return suspended;
+  }
+
+  /**
+   * @return The thread this unit of work is bound to, null if detached.
+   */
+  @Nullable
+  public Thread getThread() {
+    return thread;
+  }
+
+  /**
+   * Records the thread this unit of work is bound to, called by {@link JpaWork} implementations when they bind it or unbind it.
+   *
+   * @param thread Thread now holding this unit of work, null if detached.
+   */
+  public void setThread(@Nullable final Thread thread) {
+    this.thread = thread;
+  }
+
+  /**
+   * Tells which unit of work the thread entered last among the ones it holds of different persistence units, used to route work to the
+   * persistence unit of the running method.
+   *
+   * @return The order in which the thread entered this unit of work, higher is later, 0 if not ordered.
+   */
+  public long getEnteredOrder() {
+    return enteredOrder;
+  }
+
+  /**
+   * @param enteredOrder The order in which the thread entered this unit of work, see {@link #getEnteredOrder()}.
+   */
+  public void setEnteredOrder(final long enteredOrder) {
+    this.enteredOrder = enteredOrder;
+  }
+
+  /**
+   * @return The transactional method that last begun a transaction in this unit of work, null if none.
+   */
+  @Nullable
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * Registers a callback run once the transaction begun by the outermost {@link Transactional @Transactional} method of this unit of
+   * work commits, discarded if it rolls back.
+   *
+   * @param callback Callback, run by the thread committing, outside of the transaction.
+   * @throws IllegalStateException If there is no such transaction in progress.
+   */
+  public void afterCommit(final Runnable callback) {
+    checkNotNull(callback);
+    checkState(transaction != null, "No @Transactional transaction in progress!");
+    transaction.afterCommit(callback);
+  }
+
+  /**
+   * Registers a callback run once the transaction begun by the outermost {@link Transactional @Transactional} method of this unit of
+   * work rolls back, or fails to commit, discarded if it commits.
+   *
+   * @param callback Callback, run by the thread ending the transaction, outside of it.
+   * @throws IllegalStateException If there is no such transaction in progress.
+   */
+  public void afterRollback(final Runnable callback) {
+    checkNotNull(callback);
+    checkState(transaction != null, "No @Transactional transaction in progress!");
+    transaction.afterRollback(callback);
+  }
+
+  /**
+   * Registers a resource, such as a query stream, to be closed when this unit of work ends, if not closed before.
+   *
+   * @param resource Resource bound to the EntityManager of this unit of work.
+   */
+  public void closeOnEnd(final AutoCloseable resource) {
+    if (resources == null) {
+      resources = new ArrayList<>();
+    }
+    resources.add(checkNotNull(resource));
+  }
+
+  /**
+   * Unregisters a resource registered with {@link #closeOnEnd(AutoCloseable)}, once closed before this unit of work ends, so the unit of
+   * work doesn't keep it.
+   *
+   * @param resource Resource closed.
+   */
+  public void cancelCloseOnEnd(final AutoCloseable resource) {
+    if (resources == null) {
+      return;
+    }
+    // Usually the last one registered.
+    for (int i = resources.size() - 1; i >= 0; i--) {
+      if (resources.get(i) == resource) {
+        resources.remove(i);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Closes the resources registered with {@link #closeOnEnd(AutoCloseable)}, called by {@link JpaWork} implementations when work ends,
+   * before closing the EntityManager. Failures are logged.
+   */
+  public void closeResources() {
+    final List<AutoCloseable> closing = resources;
+    if (closing == null) {
+      return;
+    }
+    resources = null;
+    for (final AutoCloseable resource : closing) {
+      try {
+        resource.close();
+      } catch (final Exception e) {
+        logger.warn("Closing {} failed", resource, e);
+      }
+    }
+  }
+
+  /**
+   * Holds the permit of a {@link JpaProperties#WORK_LIMIT limited} priority class taken to begin this unit of work, called by
+   * {@link JpaWork} implementations.
+   *
+   * @param release Gives the permit back, run by {@link #releasePermit()}.
+   */
+  public void holdPermit(final Runnable release) {
+    checkState(permit == null, "Permit already held!");
+    permit = checkNotNull(release);
+  }
+
+  /**
+   * @return true if this unit of work, or one it suspended, holds a permit of a limited priority class.
+   */
+  public boolean holdsPermit() {
+    for (WorkContext context = this; context != null; context = context.suspended) {
+      if (context.permit != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gives back the permit held by this unit of work, if any, called by {@link JpaWork} implementations once its EntityManager is closed,
+   * as the permit bounds the connections in use.
+   */
+  public void releasePermit() {
+    final Runnable release = permit;
+    if (release != null) {
+      permit = null;
+      release.run();
+    }
+  }
+
+  /**
+   * Tells if an intercepted method already holds a transaction in this unit of work, in which case the caller must join it.
+   *
+   * @return true if inside a transaction, false otherwise.
+   */
+  public boolean inTransaction() {
+    return depth != 0;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("entityManager", entityManager)//
+        .add("depth", depth)//
+        .add("suspended", suspended != null).toString();
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import javax.annotation.Nullable;
+
+/**
+ * Binds the current {@link WorkContext} to the running thread. Selected with {@link JpaProperties#CONTEXT_STORE}.
+ *
+ * <p>
+ * Implementations must be thread safe, each thread only sees the context it has set.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public interface WorkContextStore {
+
+  /**
+   * @return The context bound to the current thread, null if there is none.
+   */
+  @Nullable
+  WorkContext get();
+
+  /**
+   * Binds a context to the current thread.
+   *
+   * @param context Context to bind.
+   */
+  void set(WorkContext context);
+
+  /**
+   * Unbinds the context of the current thread. If there is none, calling this method does nothing.
+   */
+  void remove();
+
+}
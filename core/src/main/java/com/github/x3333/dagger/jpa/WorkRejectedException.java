@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa;
+
+import javax.persistence.PersistenceException;
+
+/**
+ * Thrown when a unit of work can't begin because its priority class already has as many units of work open as its limit, see
+ * {@link JpaProperties#WORK_LIMIT}, and none ended within the {@link JpaProperties#WORK_QUEUE_TIMEOUT queue timeout}.
+ *
+ * <p>
+ * Nothing was done in the database, the call can be retried later.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public class WorkRejectedException extends PersistenceException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String priority;
+
+  /**
+   * @param message Detail message.
+   * @param priority Priority class of the rejected unit of work.
+   */
+  public WorkRejectedException(final String message, final String priority) {
+    super(message);
+    this.priority = priority;
+  }
+
+  //
+
+  /**
+   * @return Priority class of the rejected unit of work, empty for the default class.
+   */
+  public String getPriority() {
+    return priority;
+  }
+
+}
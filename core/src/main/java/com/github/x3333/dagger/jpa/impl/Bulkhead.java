@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.WorkRejectedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the units of work open at the same time in a priority class, see {@link com.github.x3333.dagger.jpa.JpaProperties#WORK_LIMIT}.
+ *
+ * <p>
+ * A permit is taken when work begins and given back when it ends. Without a free permit, beginning work waits in a fair queue up to the
+ * queue timeout, then is rejected.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class Bulkhead {
+
+  private final String priority;
+  private final int limit;
+  private final long timeoutNanos;
+  private final Semaphore permits;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  Bulkhead(final String priority, final int limit, final long timeoutMillis) {
+    this.priority = priority;
+    this.limit = limit;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.permits = new Semaphore(limit, true);
+  }
+
+  //
+
+  /**
+   * Takes a permit, waiting up to the queue timeout.
+   *
+   * @throws WorkRejectedException If no permit was given back in time, or the thread was interrupted waiting.
+   */
+  void acquire() {
+    // Barging is fine when a permit is free, the queue only orders waiters.
+    if (permits.tryAcquire()) {
+      return;
+    }
+    if (timeoutNanos > 0) {
+      waiting.incrementAndGet();
+      try {
+        if (permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+          return;
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        waiting.decrementAndGet();
+      }
+    }
+    rejected.increment();
+    throw new WorkRejectedException(
+        (priority.isEmpty() ? "Default priority" : "Priority " + priority) + " at its limit of " + limit + " units of work", priority);
+  }
+
+  void release() {
+    permits.release();
+  }
+
+  String priority() {
+    return priority;
+  }
+
+  BulkheadStatistics statistics() {
+    return new BulkheadStatistics(priority, limit, limit - permits.availablePermits(), waiting.get(), rejected.sum());
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Snapshot of the counters of a priority class limited by {@link com.github.x3333.dagger.jpa.JpaProperties#WORK_LIMIT}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class BulkheadStatistics {
+
+  private final String priority;
+  private final int limit;
+  private final int open;
+  private final int waiting;
+  private final long rejected;
+
+  BulkheadStatistics(final String priority, final int limit, final int open, final int waiting, final long rejected) {
+    this.priority = priority;
+    this.limit = limit;
+    this.open = open;
+    this.waiting = waiting;
+    this.rejected = rejected;
+  }
+
+  //
+
+  /**
+   * @return Priority class, empty for the default class.
+   */
+  public String getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return Maximum number of units of work open at the same time.
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return Number of units of work open.
+   */
+  public int getOpen() {
+    return open;
+  }
+
+  /**
+   * @return Number of threads waiting to begin work, the queue depth.
+   */
+  public int getWaiting() {
+    return waiting;
+  }
+
+  /**
+   * @return Number of units of work rejected.
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("priority", priority)//
+        .add("limit", limit)//
+        .add("open", open)//
+        .add("waiting", waiting)//
+        .add("rejected", rejected).toString();
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.JpaMetrics;
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.TransactionProfile;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link JpaMetrics} forwarding every event to the {@link JpaProperties#METRICS} of the unit and to its {@link RecordingJpaMetrics
+ * statistics}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class CompositeJpaMetrics implements JpaMetrics {
+
+  private final JpaMetrics first;
+  private final JpaMetrics second;
+
+  CompositeJpaMetrics(final JpaMetrics first, final JpaMetrics second) {
+    this.first = first;
+    this.second = second;
+  }
+
+  //
+
+  @Override
+  public void workBegun() {
+    first.workBegun();
+    second.workBegun();
+  }
+
+  @Override
+  public void workEnded(@Nullable final String method, final long durationNanos) {
+    first.workEnded(method, durationNanos);
+    second.workEnded(method, durationNanos);
+  }
+
+  @Override
+  public void workLeaked(@Nullable final String method) {
+    first.workLeaked(method);
+    second.workLeaked(method);
+  }
+
+  @Override
+  public void workRejected(final String priority) {
+    first.workRejected(priority);
+    second.workRejected(priority);
+  }
+
+  @Override
+  public void transactionBegun(final String method) {
+    first.transactionBegun(method);
+    second.transactionBegun(method);
+  }
+
+  @Override
+  public void transactionJoined(final String method) {
+    first.transactionJoined(method);
+    second.transactionJoined(method);
+  }
+
+  @Override
+  public void transactionCommitted(final String method, final long durationNanos, final long commitNanos) {
+    first.transactionCommitted(method, durationNanos, commitNanos);
+    second.transactionCommitted(method, durationNanos, commitNanos);
+  }
+
+  @Override
+  public void transactionRolledBack(final String method, final long durationNanos) {
+    first.transactionRolledBack(method, durationNanos);
+    second.transactionRolledBack(method, durationNanos);
+  }
+
+  @Override
+  public void transactionRetried(final String method) {
+    first.transactionRetried(method);
+    second.transactionRetried(method);
+  }
+
+  @Override
+  public void transactionProfiled(final TransactionProfile profile) {
+    first.transactionProfiled(profile);
+    second.transactionProfiled(profile);
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.WorkContext;
+import com.github.x3333.dagger.jpa.WorkContextStore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link WorkContextStore} keeping contexts in a map shared by all threads, keyed by the thread.
+ * 
+ * <p>
+ * Threads don't allocate a {@code ThreadLocal} map, and the entry is gone as soon as work ends. Suited to huge numbers of short-lived
+ * threads, like virtual threads, where each would otherwise allocate its own map.
+ * 
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class ConcurrentMapWorkContextStore implements WorkContextStore {
+
+  private final ConcurrentMap<Thread, WorkContext> contexts = new ConcurrentHashMap<>();
+
+  @Override
+  public WorkContext get() {
+    return contexts.get(Thread.currentThread());
+  }
+
+  @Override
+  public void set(final WorkContext context) {
+    contexts.put(Thread.currentThread(), context);
+  }
+
+  @Override
+  public void remove() {
+    contexts.remove(Thread.currentThread());
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Index of the managed classes, {@code @Entity}, {@code @Embeddable} and {@code @MappedSuperclass}, generated at build time by the
+ * {@code dagger-jpa-compiler} annotation processor, one class name per line. Each jar has its own index, all of them are read.
+ *
+ * <p>
+ * Enabled by {@link com.github.x3333.dagger.jpa.JpaProperties#ENTITY_INDEX}, the classes are given to the persistence provider instead of
+ * having it scan the classpath for them. The index holds the classes of every persistence unit, each unit takes the ones of its packages.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class EntityIndex {
+
+  /**
+   * Resource holding the index.
+   */
+  public static final String RESOURCE = "META-INF/dagger-jpa/entities";
+
+  private EntityIndex() {}
+
+  //
+
+  /**
+   * Loads the classes of all indexes found, in the given packages, so each persistence unit only gets its own classes.
+   *
+   * @param packages Packages of the classes, including their subpackages, empty for all classes.
+   * @return Managed classes, empty if there is no index.
+   * @throws IllegalStateException If an index can't be read or a class in it can't be loaded.
+   */
+  static List<Class<?>> load(final List<String> packages) {
+    final ClassLoader classLoader = MoreObjects.firstNonNull(Thread.currentThread().getContextClassLoader(), //
+        EntityIndex.class.getClassLoader());
+
+    final Set<String> classNames = new LinkedHashSet<>();
+    try {
+      final Enumeration<URL> indexes = classLoader.getResources(RESOURCE);
+      while (indexes.hasMoreElements()) {
+        read(indexes.nextElement(), classNames);
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException("Could not read entity index " + RESOURCE, e);
+    }
+
+    final List<Class<?>> classes = new ArrayList<>(classNames.size());
+    for (final String className : classNames) {
+      if (!packages.isEmpty() && !inPackages(className, packages)) {
+        continue;
+      }
+      try {
+        classes.add(Class.forName(className, false, classLoader));
+      } catch (final ClassNotFoundException e) {
+        throw new IllegalStateException("Class in entity index not found: " + className, e);
+      }
+    }
+    return classes;
+  }
+
+  private static boolean inPackages(final String className, final List<String> packages) {
+    for (final String packageName : packages) {
+      if (className.startsWith(packageName) && className.length() > packageName.length()
+          && className.charAt(packageName.length()) == '.') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void read(final URL index, final Set<String> classNames) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          classNames.add(line);
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of cleared {@link EntityManager}s created by a single {@link EntityManagerFactory}.
+ *
+ * <p>
+ * Released EntityManagers are only pooled if open and without an active transaction. They are cleared and their properties and flush mode
+ * reset to the ones of a new EntityManager before being pooled; properties a new EntityManager doesn't have can't be removed, so such an
+ * EntityManager is discarded. Once closed, the pool closes every EntityManager released to it.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class EntityManagerPool {
+
+  private final Logger logger = LoggerFactory.getLogger(EntityManagerPool.class);
+
+  private final EntityManagerFactory emFactory;
+  private final int capacity;
+
+  private final Queue<EntityManager> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private volatile Map<String, Object> defaultProperties;
+  private volatile FlushModeType defaultFlushMode;
+  private volatile boolean closed;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder discarded = new LongAdder();
+
+  EntityManagerPool(final EntityManagerFactory emFactory, final int capacity) {
+    this.emFactory = emFactory;
+    this.capacity = capacity;
+  }
+
+  //
+
+  EntityManager acquire() {
+    final EntityManager em = idle.poll();
+    if (em != null) {
+      idleCount.decrementAndGet();
+      hits.increment();
+      return em;
+    }
+
+    misses.increment();
+    final EntityManager created = emFactory.createEntityManager();
+    if (defaultFlushMode == null) {
+      defaultProperties = Collections.unmodifiableMap(new HashMap<>(created.getProperties()));
+      defaultFlushMode = created.getFlushMode();
+    }
+    return created;
+  }
+
+  void release(final EntityManager em) {
+    if (closed || !isReusable(em)) {
+      discard(em);
+      return;
+    }
+
+    if (idleCount.incrementAndGet() > capacity) {
+      idleCount.decrementAndGet();
+      discard(em);
+      return;
+    }
+
+    idle.offer(em);
+    // Closed while being released, make sure it is not left behind.
+    if (closed) {
+      drain();
+    }
+  }
+
+  void close() {
+    closed = true;
+    drain();
+  }
+
+  PoolStatistics statistics() {
+    return new PoolStatistics(capacity, idleCount.get(), hits.sum(), misses.sum(), discarded.sum());
+  }
+
+  //
+
+  private boolean isReusable(final EntityManager em) {
+    if (!em.isOpen()) {
+      return false;
+    }
+    if (em.getTransaction().isActive()) {
+      logger.warn("EntityManager released with an active transaction, discarding it");
+      return false;
+    }
+
+    try {
+      em.clear();
+      if (defaultFlushMode != null) {
+        // Hibernate applies its stored properties again on every setProperty, reset them before the flush mode.
+        if (!resetProperties(em)) {
+          logger.debug("EntityManager has properties a new one doesn't have, discarding it");
+          return false;
+        }
+        if (em.getFlushMode() != defaultFlushMode) {
+          em.setFlushMode(defaultFlushMode);
+        }
+      }
+      return true;
+    } catch (final RuntimeException e) {
+      logger.warn("EntityManager could not be reset, discarding it", e);
+      return false;
+    }
+  }
+
+  /**
+   * @return false if the EntityManager has a property a new one doesn't have.
+   */
+  private boolean resetProperties(final EntityManager em) {
+    final Map<String, Object> defaults = defaultProperties;
+    if (em.getProperties().equals(defaults)) {
+      return true;
+    }
+
+    final Map<String, Object> properties = new HashMap<>(em.getProperties());
+    if (!defaults.keySet().containsAll(properties.keySet())) {
+      return false;
+    }
+    for (final Map.Entry<String, Object> property : defaults.entrySet()) {
+      if (!Objects.equals(properties.get(property.getKey()), property.getValue())) {
+        em.setProperty(property.getKey(), property.getValue());
+      }
+    }
+    return true;
+  }
+
+  private void discard(final EntityManager em) {
+    discarded.increment();
+    if (em.isOpen()) {
+      em.close();
+    }
+  }
+
+  private void drain() {
+    EntityManager em;
+    while ((em = idle.poll()) != null) {
+      idleCount.decrementAndGet();
+      if (em.isOpen()) {
+        em.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ *
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split in {@value #SUB_BUCKETS} buckets, so percentiles are within ~6% of
+ * the recorded values, whatever their magnitude, in a fixed array of counters. Each bucket is a {@link LongAdder}, created on its first
+ * value, so cores recording the same durations don't contend on a shared counter.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values below 2 * SUB_BUCKETS have a bucket each, then every power of two up to 2^62 has SUB_BUCKETS buckets.
+  private static final int BUCKETS = 2 * SUB_BUCKETS + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  //
+
+  void record(final long value) {
+    final long nanos = Math.max(0, value);
+    counter(bucket(nanos)).increment();
+    count.increment();
+    total.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  /**
+   * @return Number of recorded values.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return Sum of the recorded values, in nanoseconds.
+   */
+  public long getTotal() {
+    return total.sum();
+  }
+
+  /**
+   * @return Highest recorded value, in nanoseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return Mean of the recorded values, in nanoseconds, 0 if there is none.
+   */
+  public double getMean() {
+    final long n = count.sum();
+    return n == 0 ? 0 : (double) total.sum() / n;
+  }
+
+  /**
+   * Value below which a percentage of the recorded values fall.
+   *
+   * @param percentile Percentile, from 0 to 100.
+   * @return Highest value of the percentile bucket, in nanoseconds, 0 if there is none.
+   */
+  public long getPercentile(final double percentile) {
+    checkArgument(percentile >= 0 && percentile <= 100, "Invalid percentile: %s", percentile);
+
+    final long[] snapshot = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      final LongAdder counter = buckets.get(i);
+      snapshot[i] = counter == null ? 0 : counter.sum();
+      n += snapshot[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("count", getCount())//
+        .add("mean", millis((long) getMean()))//
+        .add("p50", millis(getPercentile(50)))//
+        .add("p99", millis(getPercentile(99)))//
+        .add("max", millis(getMax())).toString();
+  }
+
+  //
+
+  private LongAdder counter(final int bucket) {
+    final LongAdder counter = buckets.get(bucket);
+    if (counter != null) {
+      return counter;
+    }
+    final LongAdder created = new LongAdder();
+    return buckets.compareAndSet(bucket, null, created) ? created : buckets.get(bucket);
+  }
+
+  static int bucket(final long value) {
+    if (value < 2 * SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return SUB_BUCKETS * (shift + 1) + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValue(final int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKETS - 1;
+    final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  private static String millis(final long nanos) {
+    return String.format("%.3fms", nanos / 1e6);
+  }
+
+}
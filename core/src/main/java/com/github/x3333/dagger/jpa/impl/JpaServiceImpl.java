@@ -13,17 +13,38 @@
 
 package com.github.x3333.dagger.jpa.impl;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import com.github.x3333.dagger.jpa.JpaMetrics;
+import com.github.x3333.dagger.jpa.JpaProperties;
 import com.github.x3333.dagger.jpa.JpaService;
 import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.WorkContext;
+import com.github.x3333.dagger.jpa.WorkContextStore;
+import com.github.x3333.dagger.jpa.WorkRejectedException;
+import com.github.x3333.dagger.jpa.impl.Lifecycle.State;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
@@ -31,6 +52,11 @@ import javax.persistence.Persistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+
 /**
  * Default implementation of {@link JpaService}.
  * 
@@ -39,97 +65,285 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public final class JpaServiceImpl implements JpaService, JpaWork {
 
+  /**
+   * Runs {@link #startAsync()}, shared by the units so starting them in parallel reuses idle threads.
+   */
+  private static final Executor STARTER = Executors.newCachedThreadPool(runnable -> {
+    final Thread thread = new Thread(runnable, "jpa-start");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private final Logger logger = LoggerFactory.getLogger(JpaServiceImpl.class);
 
   private final String persistenceUnitName;
   private final Map<?, ?> persistenceProperties;
+  private final int poolSize;
+  private final boolean lazy;
+  /**
+   * Packages of the {@link EntityIndex} classes of this unit, empty for all, null if the index is not used.
+   */
+  @Nullable
+  private final List<String> entityPackages;
+  private final int profilingThreshold;
+  @Nullable
+  private final Executor asyncExecutor;
 
-  private final Object emFactoryLock = new Object();
-  private volatile EntityManagerFactory emFactory;
-  private final ThreadLocal<EntityManager> entityManager = new ThreadLocal<>();
+  private final AtomicReference<Lifecycle> lifecycle = new AtomicReference<>(Lifecycle.STOPPED);
+  private final WorkContextStore contexts;
+  @Nullable
+  private final JpaMetrics metrics;
+  @Nullable
+  private final RecordingJpaMetrics statistics;
+  private final boolean jmx;
+  @Nullable
+  private final WorkWatchdog watchdog;
+  @Nullable
+  private final Bulkhead defaultBulkhead;
+  private final Map<String, Bulkhead> bulkheads;
+  /**
+   * Units routing among this and others, stamping the order work is entered, null if not routed.
+   */
+  @Nullable
+  private volatile JpaUnits router;
 
   @Inject
   public JpaServiceImpl(//
       @Named("jpa.unitname") final String persistenceUnitName,
       @Nullable @Named("jpa.properties") final Map<?, ?> persistenceProperties) {
     logger.trace("Creating");
+    final Settings settings = new Settings(persistenceProperties);
     this.persistenceUnitName = persistenceUnitName;
-    this.persistenceProperties = persistenceProperties;
+    this.persistenceProperties = settings.providerProperties();
+    this.poolSize = settings.getNonNegativeInt(JpaProperties.POOL_SIZE, 0);
+    this.lazy = settings.getBoolean(JpaProperties.LAZY_WORK, false);
+    this.entityPackages = entityPackages(settings);
+    this.profilingThreshold = settings.getNonNegativeInt(JpaProperties.PROFILING_THRESHOLD, 0);
+    this.asyncExecutor = settings.getInstance(JpaProperties.ASYNC_EXECUTOR, Executor.class, null);
+    this.contexts = settings.getInstance(JpaProperties.CONTEXT_STORE, WorkContextStore.class, new ThreadLocalWorkContextStore());
+    final JpaMetrics configured = settings.getInstance(JpaProperties.METRICS, JpaMetrics.class, null);
+    if (configured instanceof RecordingJpaMetrics) {
+      this.statistics = (RecordingJpaMetrics) configured;
+    } else {
+      this.statistics = settings.getBoolean(JpaProperties.STATISTICS, true) ? new RecordingJpaMetrics() : null;
+    }
+    if (configured == null || configured == statistics) {
+      this.metrics = statistics;
+    } else {
+      this.metrics = statistics == null ? configured : new CompositeJpaMetrics(configured, statistics);
+    }
+    this.jmx = settings.getBoolean(JpaProperties.JMX, false);
+    final int watchdogThreshold = settings.getNonNegativeInt(JpaProperties.WATCHDOG_THRESHOLD, 0);
+    this.watchdog = watchdogThreshold > 0 ? new WorkWatchdog(persistenceUnitName, watchdogThreshold, this::endLeaked) : null;
+    final int queueTimeout = settings.getNonNegativeInt(JpaProperties.WORK_QUEUE_TIMEOUT, 0);
+    final int workLimit = settings.getNonNegativeInt(JpaProperties.WORK_LIMIT, 0);
+    this.defaultBulkhead = workLimit > 0 ? new Bulkhead("", workLimit, queueTimeout) : null;
+    final ImmutableMap.Builder<String, Bulkhead> priorityBulkheads = ImmutableMap.builder();
+    for (final Map.Entry<String, Integer> limit : settings.getIntMap(JpaProperties.WORK_LIMITS).entrySet()) {
+      checkArgument(limit.getValue() > 0, "%s of %s must be positive: %s", JpaProperties.WORK_LIMITS, limit.getKey(), limit.getValue());
+      priorityBulkheads.put(limit.getKey(), new Bulkhead(limit.getKey(), limit.getValue(), queueTimeout));
+    }
+    this.bulkheads = priorityBulkheads.build();
   }
 
   @Override
   public void start() {
-    logger.info("Starting");
-    synchronized (emFactoryLock) {
-      if (emFactory != null) {
-        return;
-      }
-
-      emFactory = Persistence.createEntityManagerFactory(persistenceUnitName, persistenceProperties);
+    try {
+      startAsync(MoreExecutors.directExecutor()).join();
+    } catch (final CompletionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw e;
     }
   }
 
   @Override
-  public boolean hasStarted() {
-    return emFactory != null;
+  public CompletableFuture<JpaService> startAsync() {
+    return startAsync(STARTER);
   }
 
   @Override
-  public void stop() {
-    logger.info("Stopping");
-    synchronized (emFactoryLock) {
-      if (emFactory == null) {
-        return;
+  public CompletableFuture<JpaService> startAsync(final Executor executor) {
+    for (;;) {
+      final Lifecycle current = lifecycle.get();
+      switch (current.state) {
+        case STARTING:
+        case STARTED:
+          // Callers must not be able to complete the shared future.
+          return current.startup.thenApply(service -> service);
+        case STOPPING:
+          final CompletableFuture<JpaService> failed = new CompletableFuture<>();
+          failed.completeExceptionally(new IllegalStateException("JpaService is stopping!"));
+          return failed;
+        case STOPPED:
+          final Lifecycle starting = Lifecycle.starting(new CompletableFuture<>());
+          if (lifecycle.compareAndSet(current, starting)) {
+            logger.info("Starting");
+            try {
+              executor.execute(() -> createFactory(starting));
+            } catch (final RuntimeException e) {
+              failStart(starting, e);
+            }
+            return starting.startup.thenApply(service -> service);
+          }
+          break;
+        default:
+          throw new AssertionError(current.state);
       }
+    }
+  }
 
-      // Should never occurs!
-      checkState(emFactory.isOpen(), "Persistence service is already shut down!");
+  @Override
+  public boolean hasStarted() {
+    return lifecycle.get().is(State.STARTED);
+  }
 
-      try {
-        emFactory.close();
-      } finally {
-        emFactory = null;
+  @Override
+  public void stop() {
+    for (;;) {
+      final Lifecycle current = lifecycle.get();
+      switch (current.state) {
+        case STOPPED:
+        case STOPPING:
+          return;
+        case STARTING:
+          // Let it finish, a half created factory can't be closed.
+          try {
+            current.startup.join();
+          } catch (final CompletionException e) {
+            return;
+          }
+          break;
+        case STARTED:
+          final Lifecycle stopping = current.stopping();
+          if (lifecycle.compareAndSet(current, stopping)) {
+            logger.info("Stopping");
+            closeFactory(stopping);
+            return;
+          }
+          break;
+        default:
+          throw new AssertionError(current.state);
       }
     }
   }
 
+  @Override
+  public String statisticsReport(final int top) {
+    return statistics == null ? "" : statistics.report(top);
+  }
+
   @Override
   public EntityManager getEntityManager() {
     logger.trace("Get EntityManager");
     checkHasStarted();
 
-    checkState(hasBegun(), "EntityManager requested, but work hasn't been initiated. "
+    final WorkContext context = contexts.get();
+    checkState(context != null, "EntityManager requested, but work hasn't been initiated. "
         + "You should call JpaService.being() and JpaService.end(), or use Transactional method interceptor.");
 
-    return entityManager.get();
+    return context.getCurrentEntityManager();
   }
 
   @Override
   public void begin() {
+    begin("");
+  }
+
+  /**
+   * Same as {@link #begin()}, in a priority class limited by {@link JpaProperties#WORK_LIMITS}.
+   * 
+   * @param priority Priority class, empty for the default class.
+   * @throws WorkRejectedException If the priority class is at its limit.
+   */
+  public void begin(final String priority) {
     logger.trace("Begin work");
-    checkHasStarted();
+    final Lifecycle started = checkHasStarted();
 
-    if (entityManager.get() != null) {
+    if (contexts.get() != null) {
       return;
     }
 
-    entityManager.set(emFactory.createEntityManager());
+    begin(started, null, priority);
+  }
+
+  @Override
+  public void beginNew() {
+    beginNew("");
+  }
+
+  /**
+   * Same as {@link #beginNew()}, in a priority class limited by {@link JpaProperties#WORK_LIMITS}.
+   * 
+   * @param priority Priority class, empty for the default class.
+   * @throws WorkRejectedException If the priority class is at its limit.
+   */
+  public void beginNew(final String priority) {
+    logger.trace("Begin new work");
+    final Lifecycle started = checkHasStarted();
+
+    begin(started, contexts.get(), priority);
   }
 
   @Override
   public void end() {
     logger.trace("End work");
-    checkHasStarted();
+    final Lifecycle started = checkHasStarted();
 
-    final EntityManager em = entityManager.get();
-    if (em == null) {
+    final WorkContext context = contexts.get();
+    if (context == null) {
       return;
     }
 
+    if (watchdog != null) {
+      watchdog.closed(context);
+    }
     try {
-      em.close();
+      closeEntityManager(started, context);
     } finally {
-      entityManager.remove();
+      context.releasePermit();
+      resumeSuspended(context);
+      if (metrics != null) {
+        metrics.workEnded(context.getMethod(), System.nanoTime() - context.getBegunAt());
+      }
+    }
+  }
+
+  /**
+   * Unbinds the unit of work of the current thread without ending it, resuming the one it suspended, if any. Unlike {@link #detach()},
+   * the suspended units of work stay bound. The detached unit of work must be ended with {@link #endDetached(WorkContext)}.
+   * 
+   * @return The detached context, null if work hasn't begun.
+   */
+  @Nullable
+  public WorkContext detachCurrent() {
+    logger.trace("Detach current work");
+    final WorkContext context = contexts.get();
+    if (context != null) {
+      resumeSuspended(context);
+      context.setThread(null);
+    }
+    return context;
+  }
+
+  /**
+   * Ends a unit of work returned by {@link #detachCurrent()}, from any thread.
+   * 
+   * @param context Detached context.
+   */
+  public void endDetached(final WorkContext context) {
+    logger.trace("End detached work");
+    final Lifecycle started = checkHasStarted();
+
+    if (watchdog != null) {
+      watchdog.closed(context);
+    }
+    try {
+      closeEntityManager(started, context);
+    } finally {
+      context.releasePermit();
+      if (metrics != null) {
+        metrics.workEnded(context.getMethod(), System.nanoTime() - context.getBegunAt());
+      }
     }
   }
 
@@ -137,12 +351,340 @@ public final class JpaServiceImpl implements JpaService, JpaWork {
   public boolean hasBegun() {
     checkHasStarted();
 
-    return entityManager.get() != null;
+    return contexts.get() != null;
+  }
+
+  @Override
+  public WorkContext getContext() {
+    return contexts.get();
+  }
+
+  @Override
+  public WorkContext detach() {
+    logger.trace("Detach work");
+    final WorkContext context = contexts.get();
+    if (context != null) {
+      contexts.remove();
+      bindThread(context, null);
+    }
+    return context;
+  }
+
+  @Override
+  public void attach(final WorkContext context) {
+    logger.trace("Attach work");
+    checkNotNull(context);
+    checkHasStarted();
+    checkState(contexts.get() == null, "Work has already begun in this thread!");
+
+    bindThread(context, Thread.currentThread());
+    final JpaUnits units = router;
+    if (units != null) {
+      context.setEnteredOrder(units.nextOrder());
+    }
+    contexts.set(context);
+  }
+
+  /**
+   * Statistics of the {@link EntityManager} pool, enabled by {@link JpaProperties#POOL_SIZE}.
+   * 
+   * @return Pool statistics, null if pooling is disabled or the service is not started.
+   */
+  @Nullable
+  public PoolStatistics getPoolStatistics() {
+    final EntityManagerPool pool = lifecycle.get().emPool;
+    return pool == null ? null : pool.statistics();
+  }
+
+  /**
+   * Units of work open longer than the {@link JpaProperties#WATCHDOG_THRESHOLD watchdog threshold}.
+   * 
+   * @return Open units of work, null if the watchdog is disabled.
+   */
+  @Nullable
+  public List<OpenWork> getOpenWork() {
+    return watchdog == null ? null : watchdog.openWork();
+  }
+
+  /**
+   * Counters of the priority classes limited by {@link JpaProperties#WORK_LIMIT} and {@link JpaProperties#WORK_LIMITS}.
+   * 
+   * @return Statistics of each limited class, the default class first if limited, empty if there is no limit.
+   */
+  public List<BulkheadStatistics> getBulkheadStatistics() {
+    final List<BulkheadStatistics> statistics = new ArrayList<>(bulkheads.size() + 1);
+    if (defaultBulkhead != null) {
+      statistics.add(defaultBulkhead.statistics());
+    }
+    for (final Bulkhead bulkhead : bulkheads.values()) {
+      statistics.add(bulkhead.statistics());
+    }
+    return statistics;
+  }
+
+  /**
+   * Metrics of this unit: the {@link JpaProperties#METRICS} and the {@link JpaProperties#STATISTICS statistics}.
+   * 
+   * @return Metrics, null if both are disabled.
+   */
+  @Nullable
+  public JpaMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Statistics of the transactional methods of this unit, enabled by {@link JpaProperties#STATISTICS}.
+   * 
+   * @return Statistics, null if disabled.
+   */
+  @Nullable
+  public RecordingJpaMetrics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return The {@link JpaProperties#PROFILING_THRESHOLD profiling threshold}, 0 if profiling is disabled.
+   */
+  public int getProfilingThreshold() {
+    return profilingThreshold;
+  }
+
+  /**
+   * @return The {@link JpaProperties#ASYNC_EXECUTOR executor} ending asynchronous transactions, null for the thread completing them.
+   */
+  @Nullable
+  public Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Routes this unit through the given units, which stamp the order work is entered in each unit to tell which one is running.
+   * 
+   * @param units Units routing among this and others.
+   */
+  void routedBy(final JpaUnits units) {
+    router = units;
   }
 
   //
 
-  private void checkHasStarted() {
-    checkState(hasStarted(), "JpaService not started!");
+  private void begin(final Lifecycle started, @Nullable final WorkContext suspended, final String priority) {
+    Bulkhead bulkhead = bulkheads.isEmpty() || priority.isEmpty() ? defaultBulkhead : bulkheads.getOrDefault(priority, defaultBulkhead);
+    if (bulkhead != null && suspended != null && suspended.holdsPermit()) {
+      // The thread already holds a permit, waiting for another one could wait for itself.
+      bulkhead = null;
+    }
+    if (bulkhead != null) {
+      try {
+        bulkhead.acquire();
+      } catch (final WorkRejectedException e) {
+        if (metrics != null) {
+          metrics.workRejected(priority);
+        }
+        throw e;
+      }
+    }
+
+    final WorkContext context;
+    try {
+      context = lazy ? new WorkContext(() -> createEntityManager(started), suspended)
+          : new WorkContext(createEntityManager(started), suspended);
+    } catch (final RuntimeException | Error e) {
+      if (bulkhead != null) {
+        bulkhead.release();
+      }
+      throw e;
+    }
+    if (bulkhead != null) {
+      // Given back when the work ends, once its EntityManager is closed.
+      context.holdPermit(bulkhead::release);
+    }
+    context.setThread(Thread.currentThread());
+    final JpaUnits units = router;
+    if (units != null) {
+      context.setEnteredOrder(units.nextOrder());
+    }
+    contexts.set(context);
+    if (watchdog != null) {
+      watchdog.opened(context);
+    }
+    if (metrics != null) {
+      metrics.workBegun();
+    }
+  }
+
+  private static void closeEntityManager(final Lifecycle started, final WorkContext context) {
+    context.closeResources();
+    if (context.hasEntityManager()) {
+      final EntityManager em = context.getEntityManager();
+      final EntityManagerPool pool = started.emPool;
+      if (pool != null) {
+        pool.release(em);
+      } else {
+        em.close();
+      }
+    }
+  }
+
+  /**
+   * Ends a unit of work left open by a terminated thread, called by the watchdog: rolls back its transaction, closes its EntityManager and
+   * gives its permit back.
+   */
+  private void endLeaked(final WorkContext context) {
+    try {
+      if (context.hasEntityManager() && context.getEntityManager().getTransaction().isActive()) {
+        context.getEntityManager().getTransaction().rollback();
+      }
+      closeEntityManager(lifecycle.get(), context);
+    } catch (final RuntimeException e) {
+      logger.warn("Ending leaked work failed", e);
+    } finally {
+      if (metrics != null) {
+        metrics.workLeaked(context.getMethod());
+      }
+      context.releasePermit();
+    }
+  }
+
+  private void resumeSuspended(final WorkContext context) {
+    final WorkContext suspended = context.getSuspended();
+    if (suspended != null) {
+      contexts.set(suspended);
+    } else {
+      contexts.remove();
+    }
+  }
+
+  private static void bindThread(final WorkContext context, @Nullable final Thread thread) {
+    for (WorkContext bound = context; bound != null; bound = bound.getSuspended()) {
+      bound.setThread(thread);
+    }
+  }
+
+  private static EntityManager createEntityManager(final Lifecycle started) {
+    final EntityManagerPool pool = started.emPool;
+    return pool != null ? pool.acquire() : started.emFactory.createEntityManager();
+  }
+
+  private void createFactory(final Lifecycle starting) {
+    final long startedAt = System.nanoTime();
+    final EntityManagerFactory factory;
+    final long indexed;
+    try {
+      final Map<?, ?> properties = entityPackages != null ? withEntityIndex(persistenceProperties) : persistenceProperties;
+      indexed = System.nanoTime();
+      factory = Persistence.createEntityManagerFactory(persistenceUnitName, properties);
+    } catch (final RuntimeException | Error e) {
+      failStart(starting, e);
+      return;
+    }
+    final long created = System.nanoTime();
+
+    // Services start before the service is published as started, so a stop never sees them half started.
+    final EntityManagerPool pool;
+    try {
+      pool = poolSize > 0 ? new EntityManagerPool(factory, poolSize) : null;
+      if (watchdog != null) {
+        watchdog.start();
+      }
+      if (jmx && statistics != null) {
+        registerStatistics();
+      }
+    } catch (final RuntimeException | Error e) {
+      if (watchdog != null) {
+        watchdog.stop();
+      }
+      try {
+        factory.close();
+      } catch (final RuntimeException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      failStart(starting, e);
+      return;
+    }
+    final long started = System.nanoTime();
+    logger.info("Started in {}ms: entity index {}ms, entity manager factory {}ms, services {}ms", millis(started - startedAt),
+        millis(indexed - startedAt), millis(created - indexed), millis(started - created));
+    lifecycle.set(starting.started(factory, pool));
+    starting.startup.complete(this);
+  }
+
+  /**
+   * Hands the classes of the {@link EntityIndex} to Hibernate and, unless set, disables its classpath scanning.
+   */
+  private Map<?, ?> withEntityIndex(@Nullable final Map<?, ?> properties) {
+    final List<Class<?>> classes = EntityIndex.load(entityPackages);
+    logger.debug("{} classes in the entity index", classes.size());
+
+    final Map<Object, Object> indexed = properties == null ? new HashMap<>() : new HashMap<>(properties);
+    indexed.put("hibernate.ejb.loaded.classes", classes);
+    indexed.putIfAbsent("hibernate.archive.autodetection", "none");
+    return indexed;
+  }
+
+  @Nullable
+  private static List<String> entityPackages(final Settings settings) {
+    final String entityIndex = settings.getString(JpaProperties.ENTITY_INDEX, "false");
+    if ("false".equalsIgnoreCase(entityIndex)) {
+      return null;
+    }
+    return "true".equalsIgnoreCase(entityIndex) ? ImmutableList.of() : settings.getList(JpaProperties.ENTITY_INDEX);
+  }
+
+  private static long millis(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private ObjectName statisticsName() throws MalformedObjectNameException {
+    return new ObjectName("com.github.x3333.dagger.jpa:type=Statistics,unit=" + ObjectName.quote(persistenceUnitName));
+  }
+
+  private void registerStatistics() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new JpaStatistics(statistics), statisticsName());
+    } catch (final JMException e) {
+      logger.warn("Could not register the statistics MBean", e);
+    }
+  }
+
+  private void unregisterStatistics() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsName());
+    } catch (final JMException e) {
+      logger.warn("Could not unregister the statistics MBean", e);
+    }
+  }
+
+  private void failStart(final Lifecycle starting, final Throwable cause) {
+    lifecycle.set(Lifecycle.STOPPED);
+    starting.startup.completeExceptionally(cause);
+  }
+
+  private void closeFactory(final Lifecycle stopping) {
+    if (watchdog != null) {
+      watchdog.stop();
+    }
+    if (jmx && statistics != null) {
+      unregisterStatistics();
+    }
+    try {
+      // Should never occurs!
+      checkState(stopping.emFactory.isOpen(), "Persistence service is already shut down!");
+
+      if (stopping.emPool != null) {
+        stopping.emPool.close();
+      }
+      stopping.emFactory.close();
+    } finally {
+      lifecycle.set(Lifecycle.STOPPED);
+    }
+  }
+
+  private Lifecycle checkHasStarted() {
+    final Lifecycle current = lifecycle.get();
+    if (!current.is(State.STARTED)) {
+      throw new IllegalStateException(current.is(State.STARTING) ? "JpaService is still starting!" : "JpaService not started!");
+    }
+    return current;
   }
 }
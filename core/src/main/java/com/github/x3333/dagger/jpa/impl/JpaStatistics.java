@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import java.util.List;
+
+/**
+ * Standard MBean exposing the {@link RecordingJpaMetrics} statistics of a persistence unit.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class JpaStatistics implements JpaStatisticsMBean {
+
+  private static final int HOT_METHODS = 10;
+
+  private final RecordingJpaMetrics statistics;
+
+  JpaStatistics(final RecordingJpaMetrics statistics) {
+    this.statistics = statistics;
+  }
+
+  //
+
+  @Override
+  public long getWorkBegun() {
+    return statistics.getWorkBegun();
+  }
+
+  @Override
+  public String[] getHotMethods() {
+    final List<MethodMetrics> hot = statistics.getHotMethods(HOT_METHODS);
+    final String[] lines = new String[hot.size()];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = hot.get(i).toString();
+    }
+    return lines;
+  }
+
+  @Override
+  public String report(final int top) {
+    return statistics.report(top);
+  }
+
+}
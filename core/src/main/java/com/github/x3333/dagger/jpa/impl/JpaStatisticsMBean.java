@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+
+/**
+ * JMX view of the {@link JpaProperties#STATISTICS statistics} of a persistence unit, registered when {@link JpaProperties#JMX} is enabled
+ * as {@code com.github.x3333.dagger.jpa:type=Statistics,unit=<persistence unit name>}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public interface JpaStatisticsMBean {
+
+  /**
+   * @return Number of units of work begun.
+   */
+  long getWorkBegun();
+
+  /**
+   * @return The 10 hot methods, one line each, see {@link RecordingJpaMetrics#getHotMethods(int)}.
+   */
+  String[] getHotMethods();
+
+  /**
+   * @param top Maximum number of methods reported.
+   * @return Text report of the hot methods, see {@link RecordingJpaMetrics#report(int)}.
+   */
+  String report(int top);
+
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.WorkContext;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * All persistence units of the application: the primary unit, bound as {@code JpaServiceImpl}, and the additional units bound in the
+ * {@code Map<String, JpaServiceImpl>} multibinding, keyed by the name used in
+ * {@link com.github.x3333.dagger.jpa.Transactional#unit() Transactional.unit}.
+ *
+ * <p>
+ * As a {@link JpaService} it starts and stops every unit. As a {@link JpaWork} it works on the unit of the running
+ * {@link com.github.x3333.dagger.jpa.Transactional @Transactional} method, or on the primary unit outside of them. Use
+ * {@link #work(String)} to work on a specific unit, e.g. to provide a {@link com.github.x3333.dagger.jpa.JpaUnit @JpaUnit} qualified
+ * {@link EntityManager}.
+ *
+ * <p>
+ * Units listed in {@link JpaProperties#READ_UNITS} serve {@link com.github.x3333.dagger.jpa.Transactional#readOnly() read-only}
+ * transactions, spread according to {@link JpaProperties#READ_ROUTING}. A read-only method called inside a transaction in progress joins it
+ * instead.
+ *
+ * <p>
+ * The running unit is the one whose unit of work was entered last in the thread: each {@link WorkContext} is stamped with the order it was
+ * entered, so no thread local is needed to remember it.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@Singleton
+public final class JpaUnits implements JpaService, JpaWork {
+
+  /**
+   * Unit name routing to any of the {@link JpaProperties#READ_UNITS}.
+   */
+  public static final String READ = "read";
+
+  /**
+   * Returned by {@link #enter(JpaServiceImpl)} when the unit was already the running one.
+   */
+  public static final long NOT_ENTERED = Long.MIN_VALUE;
+
+  private final JpaServiceImpl primary;
+  private final Map<String, JpaServiceImpl> units;
+  private final JpaServiceImpl[] readUnits;
+  private final boolean leastOutstanding;
+
+  private final boolean routing;
+  private final JpaServiceImpl[] allUnits;
+  private final Map<JpaServiceImpl, AtomicInteger> outstanding = new IdentityHashMap<>();
+  private final AtomicInteger nextRead = new AtomicInteger();
+
+  @Inject
+  public JpaUnits(//
+      final JpaServiceImpl primary, //
+      final Map<String, JpaServiceImpl> units, //
+      @Nullable @Named("jpa.properties") final Map<?, ?> persistenceProperties) {
+    final Settings settings = new Settings(persistenceProperties);
+    this.primary = primary;
+    this.units = ImmutableMap.copyOf(units);
+
+    final List<String> readUnitNames = settings.getList(JpaProperties.READ_UNITS);
+    this.readUnits = new JpaServiceImpl[readUnitNames.size()];
+    for (int i = 0; i < readUnits.length; i++) {
+      readUnits[i] = unit(readUnitNames.get(i));
+    }
+
+    final String readRouting = settings.getString(JpaProperties.READ_ROUTING, JpaProperties.ROUTING_ROUND_ROBIN);
+    checkArgument(JpaProperties.ROUTING_ROUND_ROBIN.equals(readRouting) || JpaProperties.ROUTING_LEAST_OUTSTANDING.equals(readRouting),
+        "Invalid value for %s: %s", JpaProperties.READ_ROUTING, readRouting);
+    this.leastOutstanding = JpaProperties.ROUTING_LEAST_OUTSTANDING.equals(readRouting);
+
+    this.routing = !this.units.isEmpty();
+    this.allUnits = new JpaServiceImpl[this.units.size() + 1];
+    allUnits[0] = primary;
+    int i = 1;
+    for (final JpaServiceImpl unit : this.units.values()) {
+      allUnits[i++] = unit;
+    }
+    for (final JpaServiceImpl unit : allUnits) {
+      outstanding.put(unit, new AtomicInteger());
+      if (routing) {
+        unit.routedBy(this);
+      }
+    }
+  }
+
+  //
+
+  /**
+   * Work on a specific unit.
+   *
+   * @param name Unit name, empty for the primary unit.
+   * @return The unit's JpaWork.
+   */
+  public JpaWork work(final String name) {
+    return unit(name);
+  }
+
+  /**
+   * @return The primary unit.
+   */
+  public JpaServiceImpl primary() {
+    return primary;
+  }
+
+  /**
+   * Tells if there are units other than the primary. If not, every transaction uses the primary unit and no routing is done.
+   *
+   * @return true if transactions must be routed.
+   */
+  public boolean isRouting() {
+    return routing;
+  }
+
+  /**
+   * Selects the unit of a transactional method.
+   *
+   * @param name Unit name of the method, empty for the default.
+   * @param readOnly If the method is read-only.
+   * @return The unit the method must run on.
+   */
+  public JpaServiceImpl route(final String name, final boolean readOnly) {
+    final boolean read = READ.equals(name);
+    if (!name.isEmpty() && !read) {
+      return unit(name);
+    }
+    if (readUnits.length == 0 || !(read || readOnly)) {
+      return primary;
+    }
+
+    // Join a transaction in progress, unless it is on a unit that can't serve an explicit read.
+    final JpaServiceImpl running = current();
+    if (inTransaction(running) && (!read || isReadUnit(running))) {
+      return running;
+    }
+    return leastOutstanding ? leastOutstandingReadUnit() : readUnits[Math.floorMod(nextRead.getAndIncrement(), readUnits.length)];
+  }
+
+  /**
+   * Makes a unit the running one in this thread, until {@link #exit(JpaServiceImpl, long)}.
+   *
+   * @param unit Unit of the method being invoked.
+   * @return The order the unit's work was entered before, 0 if it had not begun, or {@link #NOT_ENTERED} if it was already running, to
+   *         be given to {@link #exit(JpaServiceImpl, long)}.
+   */
+  public long enter(final JpaServiceImpl unit) {
+    if (running() == unit) {
+      return NOT_ENTERED;
+    }
+    outstanding.get(unit).incrementAndGet();
+    final WorkContext context = unit.getContext();
+    if (context == null) {
+      // Stamped when its work begins.
+      return 0;
+    }
+    final long entered = context.getEnteredOrder();
+    context.setEnteredOrder(nextOrder());
+    return entered;
+  }
+
+  /**
+   * Restores the running unit replaced by {@link #enter(JpaServiceImpl)}.
+   *
+   * @param unit Unit given to {@link #enter(JpaServiceImpl)}.
+   * @param entered Order returned by {@link #enter(JpaServiceImpl)}.
+   */
+  public void exit(final JpaServiceImpl unit, final long entered) {
+    if (entered == NOT_ENTERED) {
+      return;
+    }
+    outstanding.get(unit).decrementAndGet();
+    final WorkContext context = unit.getContext();
+    if (entered != 0 && context != null) {
+      context.setEnteredOrder(entered);
+    }
+  }
+
+  /**
+   * @return The order following the last unit of work entered in this thread.
+   */
+  long nextOrder() {
+    long last = 0;
+    for (final JpaServiceImpl unit : allUnits) {
+      final WorkContext context = unit.getContext();
+      if (context != null) {
+        last = Math.max(last, context.getEnteredOrder());
+      }
+    }
+    return last + 1;
+  }
+
+  // JpaService
+
+  @Override
+  public void start() {
+    primary.start();
+    for (final JpaServiceImpl unit : units.values()) {
+      unit.start();
+    }
+  }
+
+  @Override
+  public CompletableFuture<JpaService> startAsync() {
+    final CompletableFuture<?>[] futures = new CompletableFuture<?>[units.size() + 1];
+    futures[0] = primary.startAsync();
+    int i = 1;
+    for (final JpaServiceImpl unit : units.values()) {
+      futures[i++] = unit.startAsync();
+    }
+    return CompletableFuture.allOf(futures).thenApply(ignored -> this);
+  }
+
+  @Override
+  public CompletableFuture<JpaService> startAsync(final Executor executor) {
+    final CompletableFuture<?>[] futures = new CompletableFuture<?>[units.size() + 1];
+    futures[0] = primary.startAsync(executor);
+    int i = 1;
+    for (final JpaServiceImpl unit : units.values()) {
+      futures[i++] = unit.startAsync(executor);
+    }
+    return CompletableFuture.allOf(futures).thenApply(ignored -> this);
+  }
+
+  @Override
+  public boolean hasStarted() {
+    if (!primary.hasStarted()) {
+      return false;
+    }
+    for (final JpaServiceImpl unit : units.values()) {
+      if (!unit.hasStarted()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void stop() {
+    RuntimeException failure = null;
+    for (final JpaServiceImpl unit : units.values()) {
+      try {
+        unit.stop();
+      } catch (final RuntimeException e) {
+        failure = e;
+      }
+    }
+    primary.stop();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public String statisticsReport(final int top) {
+    final StringBuilder report = new StringBuilder(primary.statisticsReport(top));
+    for (final Map.Entry<String, JpaServiceImpl> unit : units.entrySet()) {
+      final String unitReport = unit.getValue().statisticsReport(top);
+      if (!unitReport.isEmpty()) {
+        report.append("unit ").append(unit.getKey()).append(":\n").append(unitReport);
+      }
+    }
+    return report.toString();
+  }
+
+  // JpaWork
+
+  @Override
+  public EntityManager getEntityManager() {
+    return current().getEntityManager();
+  }
+
+  @Override
+  public void begin() {
+    current().begin();
+  }
+
+  @Override
+  public void beginNew() {
+    current().beginNew();
+  }
+
+  @Override
+  public void end() {
+    current().end();
+  }
+
+  @Override
+  public boolean hasBegun() {
+    return current().hasBegun();
+  }
+
+  @Override
+  public WorkContext getContext() {
+    return current().getContext();
+  }
+
+  @Override
+  public WorkContext detach() {
+    return current().detach();
+  }
+
+  @Override
+  public void attach(final WorkContext context) {
+    current().attach(context);
+  }
+
+  /**
+   * Runs the task on the unit current in the calling thread.
+   */
+  @Override
+  public <T> CompletableFuture<T> readAsync(final Function<EntityManager, T> task, final Executor executor) {
+    return current().readAsync(task, executor);
+  }
+
+  //
+
+  private JpaServiceImpl current() {
+    if (!routing) {
+      return primary;
+    }
+    final JpaServiceImpl unit = running();
+    return unit == null ? primary : unit;
+  }
+
+  @Nullable
+  private JpaServiceImpl running() {
+    JpaServiceImpl running = null;
+    long last = 0;
+    for (final JpaServiceImpl unit : allUnits) {
+      final WorkContext context = unit.getContext();
+      if (context != null && context.getEnteredOrder() > last) {
+        running = unit;
+        last = context.getEnteredOrder();
+      }
+    }
+    return running;
+  }
+
+  private JpaServiceImpl unit(final String name) {
+    if (name.isEmpty()) {
+      return primary;
+    }
+    final JpaServiceImpl unit = units.get(name);
+    checkArgument(unit != null, "Unknown persistence unit: %s", name);
+    return unit;
+  }
+
+  private boolean isReadUnit(final JpaServiceImpl unit) {
+    for (final JpaServiceImpl readUnit : readUnits) {
+      if (readUnit == unit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean inTransaction(final JpaServiceImpl unit) {
+    final WorkContext context = unit.getContext();
+    return context != null && context.inTransaction();
+  }
+
+  private JpaServiceImpl leastOutstandingReadUnit() {
+    // Start at a rotating offset, so ties are spread too.
+    final int offset = Math.floorMod(nextRead.getAndIncrement(), readUnits.length);
+    JpaServiceImpl selected = null;
+    int selectedOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < readUnits.length; i++) {
+      final JpaServiceImpl unit = readUnits[(offset + i) % readUnits.length];
+      final int unitOutstanding = outstanding.get(unit).get();
+      if (unitOutstanding < selectedOutstanding) {
+        selected = unit;
+        selectedOutstanding = unitOutstanding;
+      }
+    }
+    return selected;
+  }
+
+}
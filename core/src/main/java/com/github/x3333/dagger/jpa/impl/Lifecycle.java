@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.JpaService;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Immutable snapshot of the {@link JpaServiceImpl} lifecycle. The service swaps snapshots atomically, so the state and the resources of
+ * the state are always read together.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class Lifecycle {
+
+  enum State {
+    STOPPED, STARTING, STARTED, STOPPING
+  }
+
+  static final Lifecycle STOPPED = new Lifecycle(State.STOPPED, null, null, null);
+
+  final State state;
+  /**
+   * Completes when the service starts, present while {@link State#STARTING} and {@link State#STARTED}.
+   */
+  @Nullable
+  final CompletableFuture<JpaService> startup;
+  /**
+   * Present while {@link State#STARTED} and {@link State#STOPPING}.
+   */
+  @Nullable
+  final EntityManagerFactory emFactory;
+  @Nullable
+  final EntityManagerPool emPool;
+
+  private Lifecycle(//
+      final State state, //
+      final CompletableFuture<JpaService> startup, //
+      final EntityManagerFactory emFactory, //
+      final EntityManagerPool emPool) {
+    this.state = state;
+    this.startup = startup;
+    this.emFactory = emFactory;
+    this.emPool = emPool;
+  }
+
+  static Lifecycle starting(final CompletableFuture<JpaService> startup) {
+    return new Lifecycle(State.STARTING, startup, null, null);
+  }
+
+  Lifecycle started(final EntityManagerFactory emFactory, @Nullable final EntityManagerPool emPool) {
+    return new Lifecycle(State.STARTED, startup, emFactory, emPool);
+  }
+
+  Lifecycle stopping() {
+    return new Lifecycle(State.STOPPING, null, emFactory, emPool);
+  }
+
+  boolean is(final State state) {
+    return this.state == state;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this).add("state", state).toString();
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Transaction metrics of a transactional method, recorded by {@link RecordingJpaMetrics}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class MethodMetrics {
+
+  private final String method;
+
+  final LongAdder begun = new LongAdder();
+  final LongAdder joined = new LongAdder();
+  final LongAdder committed = new LongAdder();
+  final LongAdder rolledBack = new LongAdder();
+  final LongAdder retried = new LongAdder();
+  final Histogram transactionTime = new Histogram();
+  final Histogram commitTime = new Histogram();
+  final Histogram workTime = new Histogram();
+
+  MethodMetrics(final String method) {
+    this.method = method;
+  }
+
+  //
+
+  /**
+   * @return Transactional method, {@code SimpleClassName.methodName}.
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return Number of transactions begun by the method.
+   */
+  public long getBegun() {
+    return begun.sum();
+  }
+
+  /**
+   * @return Number of times the method joined a transaction in progress.
+   */
+  public long getJoined() {
+    return joined.sum();
+  }
+
+  /**
+   * @return Number of transactions of the method committed.
+   */
+  public long getCommitted() {
+    return committed.sum();
+  }
+
+  /**
+   * @return Number of transactions of the method rolled back.
+   */
+  public long getRolledBack() {
+    return rolledBack.sum();
+  }
+
+  /**
+   * @return Number of transactions of the method retried.
+   */
+  public long getRetried() {
+    return retried.sum();
+  }
+
+  /**
+   * @return Duration of the transactions begun by the method, committed or rolled back.
+   */
+  public Histogram getTransactionTime() {
+    return transactionTime;
+  }
+
+  /**
+   * @return Duration of the commits of the transactions begun by the method.
+   */
+  public Histogram getCommitTime() {
+    return commitTime;
+  }
+
+  /**
+   * @return Time the units of work whose last transaction was begun by the method held their EntityManager.
+   */
+  public Histogram getWorkTime() {
+    return workTime;
+  }
+
+  /**
+   * @return Fraction of the calls of the method that joined a transaction in progress, 0 if never called.
+   */
+  public double getJoinRatio() {
+    final long joins = joined.sum();
+    final long calls = begun.sum() + joins;
+    return calls == 0 ? 0 : (double) joins / calls;
+  }
+
+  /**
+   * @return Fraction of the ended transactions of the method that were rolled back, 0 if none ended.
+   */
+  public double getRollbackRate() {
+    final long rollbacks = rolledBack.sum();
+    final long ended = committed.sum() + rollbacks;
+    return ended == 0 ? 0 : (double) rollbacks / ended;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("method", method)//
+        .add("begun", getBegun())//
+        .add("joined", getJoined())//
+        .add("committed", getCommitted())//
+        .add("rolledBack", getRolledBack())//
+        .add("retried", getRetried())//
+        .add("joinRatio", String.format("%.2f", getJoinRatio()))//
+        .add("rollbackRate", String.format("%.2f", getRollbackRate()))//
+        .add("transactionTime", transactionTime)//
+        .add("commitTime", commitTime)//
+        .add("workTime", workTime).toString();
+  }
+
+}
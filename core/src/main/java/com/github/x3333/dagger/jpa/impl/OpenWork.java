@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Snapshot of a unit of work open longer than the {@link com.github.x3333.dagger.jpa.JpaProperties#WATCHDOG_THRESHOLD watchdog threshold}.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class OpenWork {
+
+  private final String thread;
+  private final boolean threadAlive;
+  @Nullable
+  private final String method;
+  private final long openMillis;
+  private final StackTraceElement[] stackTrace;
+
+  OpenWork(//
+      final String thread, //
+      final boolean threadAlive, //
+      @Nullable final String method, //
+      final long openMillis, //
+      final StackTraceElement[] stackTrace) {
+    this.thread = thread;
+    this.threadAlive = threadAlive;
+    this.method = method;
+    this.openMillis = openMillis;
+    this.stackTrace = stackTrace;
+  }
+
+  //
+
+  /**
+   * @return Name of the thread the unit of work is bound to.
+   */
+  public String getThread() {
+    return thread;
+  }
+
+  /**
+   * @return false if the thread has terminated without ending the unit of work, which is then leaked.
+   */
+  public boolean isThreadAlive() {
+    return threadAlive;
+  }
+
+  /**
+   * @return Transactional method that last begun a transaction in the unit of work, null if none.
+   */
+  @Nullable
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * @return For how long the unit of work is open, in milliseconds.
+   */
+  public long getOpenMillis() {
+    return openMillis;
+  }
+
+  /**
+   * @return Stack trace of the thread when the snapshot was taken, empty if the thread has terminated.
+   */
+  public StackTraceElement[] getStackTrace() {
+    return stackTrace.clone();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("thread", thread)//
+        .add("threadAlive", threadAlive)//
+        .add("method", method)//
+        .add("openMillis", openMillis).toString();
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Snapshot of the {@code EntityManager} pool counters.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class PoolStatistics {
+
+  private final int capacity;
+  private final int idle;
+  private final long hits;
+  private final long misses;
+  private final long discarded;
+
+  PoolStatistics(final int capacity, final int idle, final long hits, final long misses, final long discarded) {
+    this.capacity = capacity;
+    this.idle = idle;
+    this.hits = hits;
+    this.misses = misses;
+    this.discarded = discarded;
+  }
+
+  //
+
+  /**
+   * @return Maximum number of idle EntityManagers kept.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return Number of idle EntityManagers in the pool.
+   */
+  public int getIdle() {
+    return idle;
+  }
+
+  /**
+   * @return Number of work units that reused a pooled EntityManager.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return Number of work units that had to create an EntityManager.
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return Number of EntityManagers closed instead of pooled, because the pool was full or they were not reusable.
+   */
+  public long getDiscarded() {
+    return discarded;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("capacity", capacity)//
+        .add("idle", idle)//
+        .add("hits", hits)//
+        .add("misses", misses)//
+        .add("discarded", discarded).toString();
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.github.x3333.dagger.jpa.JpaMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * {@link JpaMetrics} recording counters and duration histograms in memory, per transactional method, without locks. Counters are
+ * {@link LongAdder}s, so threads on many cores recording the same method don't contend on a shared counter.
+ *
+ * <p>
+ * Read them through the getters, or dump them with {@link #report()}, or {@link #report(int)} for the hot methods only.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class RecordingJpaMetrics implements JpaMetrics {
+
+  private final LongAdder workBegun = new LongAdder();
+  private final LongAdder workRejected = new LongAdder();
+  private final LongAdder workLeaked = new LongAdder();
+  private final Histogram workTime = new Histogram();
+  private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+  //
+
+  @Override
+  public void workBegun() {
+    workBegun.increment();
+  }
+
+  @Override
+  public void workEnded(@Nullable final String method, final long durationNanos) {
+    workTime.record(durationNanos);
+    if (method != null) {
+      method(method).workTime.record(durationNanos);
+    }
+  }
+
+  @Override
+  public void workLeaked(@Nullable final String method) {
+    workLeaked.increment();
+  }
+
+  @Override
+  public void workRejected(final String priority) {
+    workRejected.increment();
+  }
+
+  @Override
+  public void transactionBegun(final String method) {
+    method(method).begun.increment();
+  }
+
+  @Override
+  public void transactionJoined(final String method) {
+    method(method).joined.increment();
+  }
+
+  @Override
+  public void transactionCommitted(final String method, final long durationNanos, final long commitNanos) {
+    final MethodMetrics metrics = method(method);
+    metrics.committed.increment();
+    metrics.transactionTime.record(durationNanos);
+    metrics.commitTime.record(commitNanos);
+  }
+
+  @Override
+  public void transactionRolledBack(final String method, final long durationNanos) {
+    final MethodMetrics metrics = method(method);
+    metrics.rolledBack.increment();
+    metrics.transactionTime.record(durationNanos);
+  }
+
+  @Override
+  public void transactionRetried(final String method) {
+    method(method).retried.increment();
+  }
+
+  //
+
+  /**
+   * @return Number of units of work begun.
+   */
+  public long getWorkBegun() {
+    return workBegun.sum();
+  }
+
+  /**
+   * @return Number of units of work rejected by a {@link com.github.x3333.dagger.jpa.JpaProperties#WORK_LIMIT limit}.
+   */
+  public long getWorkRejected() {
+    return workRejected.sum();
+  }
+
+  /**
+   * @return Number of units of work left open by terminated threads, ended by the watchdog.
+   */
+  public long getWorkLeaked() {
+    return workLeaked.sum();
+  }
+
+  /**
+   * @return Time units of work held their EntityManager.
+   */
+  public Histogram getWorkTime() {
+    return workTime;
+  }
+
+  /**
+   * @return Metrics of each transactional method, keyed by method.
+   */
+  public Map<String, MethodMetrics> getMethods() {
+    return Collections.unmodifiableMap(methods);
+  }
+
+  /**
+   * Hot methods: the transactional methods that spent the most time in transactions they begun.
+   *
+   * @param top Maximum number of methods returned.
+   * @return Metrics of the hot methods, by decreasing total transaction time.
+   */
+  public List<MethodMetrics> getHotMethods(final int top) {
+    checkArgument(top >= 0, "top must not be negative: %s", top);
+    final List<MethodMetrics> hot = new ArrayList<>(methods.values());
+    hot.sort(Comparator.comparingLong((final MethodMetrics metrics) -> metrics.transactionTime.getTotal()).reversed());
+    return hot.size() > top ? hot.subList(0, top) : hot;
+  }
+
+  /**
+   * @return Text report of all metrics, one line per transactional method.
+   */
+  public String report() {
+    return report(methods.values());
+  }
+
+  /**
+   * @param top Maximum number of methods reported.
+   * @return Text report of the {@link #getHotMethods(int) hot methods}, one line per method.
+   */
+  public String report(final int top) {
+    return report(getHotMethods(top));
+  }
+
+  @Override
+  public String toString() {
+    return report();
+  }
+
+  //
+
+  private String report(final Collection<MethodMetrics> reported) {
+    final StringBuilder report = new StringBuilder();
+    report.append("work: begun=").append(getWorkBegun()).append(" rejected=").append(getWorkRejected()) //
+        .append(" leaked=").append(getWorkLeaked()).append(' ').append(workTime) //
+        .append('\n');
+    for (final MethodMetrics metrics : reported) {
+      report.append(metrics).append('\n');
+    }
+    return report.toString();
+  }
+
+  private MethodMetrics method(final String method) {
+    // ConcurrentHashMap.computeIfAbsent locks on hits in Java 8, look up first.
+    final MethodMetrics metrics = methods.get(method);
+    return metrics != null ? metrics : methods.computeIfAbsent(method, MethodMetrics::new);
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.github.x3333.dagger.jpa.CacheConfiguration;
+import com.github.x3333.dagger.jpa.JpaProperties;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Reads {@link JpaProperties} from the persistence properties map.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class Settings {
+
+  private final Map<?, ?> properties;
+
+  Settings(@Nullable final Map<?, ?> properties) {
+    this.properties = properties == null ? new HashMap<>() : properties;
+  }
+
+  //
+
+  String getString(final String key, final String defaultValue) {
+    final Object value = properties.get(key);
+    return value == null ? defaultValue : value.toString().trim();
+  }
+
+  /**
+   * Reads a comma separated list, given as a {@link String} or an {@link Iterable}.
+   */
+  List<String> getList(final String key) {
+    final Object value = properties.get(key);
+    if (value == null) {
+      return ImmutableList.of();
+    }
+    if (value instanceof Iterable) {
+      final ImmutableList.Builder<String> list = ImmutableList.builder();
+      for (final Object element : (Iterable<?>) value) {
+        list.add(element.toString().trim());
+      }
+      return list.build();
+    }
+    return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(value.toString());
+  }
+
+  /**
+   * Reads comma separated {@code name=value} pairs of non-negative ints, given as a {@link String} or a {@link Map}.
+   */
+  Map<String, Integer> getIntMap(final String key) {
+    final Object value = properties.get(key);
+    if (value == null) {
+      return ImmutableMap.of();
+    }
+    final Map<?, ?> entries = value instanceof Map ? (Map<?, ?>) value
+        : Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(value.toString());
+    final ImmutableMap.Builder<String, Integer> map = ImmutableMap.builder();
+    for (final Map.Entry<?, ?> entry : entries.entrySet()) {
+      final int entryValue = toInt(key, entry.getValue());
+      checkArgument(entryValue >= 0, "%s must not be negative: %s", key, value);
+      map.put(entry.getKey().toString().trim(), entryValue);
+    }
+    return map.build();
+  }
+
+  boolean getBoolean(final String key, final boolean defaultValue) {
+    final Object value = properties.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    final String string = value.toString().trim();
+    checkArgument("true".equalsIgnoreCase(string) || "false".equalsIgnoreCase(string), "Invalid value for %s: %s", key, value);
+    return Boolean.parseBoolean(string);
+  }
+
+  int getInt(final String key, final int defaultValue) {
+    final Object value = properties.get(key);
+    return value == null ? defaultValue : toInt(key, value);
+  }
+
+  int getNonNegativeInt(final String key, final int defaultValue) {
+    final int value = getInt(key, defaultValue);
+    checkArgument(value >= 0, "%s must not be negative: %s", key, value);
+    return value;
+  }
+
+  /**
+   * Reads a setting given either as an instance of {@code type} or as the name of a class with a public no-arg constructor.
+   */
+  <T> T getInstance(final String key, final Class<T> type, final T defaultValue) {
+    final Object value = properties.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (type.isInstance(value)) {
+      return type.cast(value);
+    }
+    try {
+      final ClassLoader classLoader = MoreObjects.firstNonNull(Thread.currentThread().getContextClassLoader(), //
+          Settings.class.getClassLoader());
+      final Class<?> clazz = Class.forName(value.toString().trim(), true, classLoader);
+      return type.cast(clazz.getConstructor().newInstance());
+    } catch (final ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+    }
+  }
+
+  /**
+   * The persistence properties without dagger-jpa settings, to be handed to the persistence provider, merged with the ones of the
+   * {@link JpaProperties#CACHE cache configuration}.
+   *
+   * @return Provider properties, null if there is none.
+   */
+  @Nullable
+  Map<?, ?> providerProperties() {
+    final Map<Object, Object> provider = new HashMap<>();
+    final CacheConfiguration cache = getInstance(JpaProperties.CACHE, CacheConfiguration.class, null);
+    if (cache != null) {
+      provider.putAll(cache.getProperties());
+    }
+    for (final Map.Entry<?, ?> entry : properties.entrySet()) {
+      if (!(entry.getKey() instanceof String) || !((String) entry.getKey()).startsWith(JpaProperties.PREFIX)) {
+        provider.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return provider.isEmpty() ? null : provider;
+  }
+
+  //
+
+  private static int toInt(final String key, final Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    }
+    try {
+      return Integer.parseInt(value.toString().trim());
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+    }
+  }
+
+}
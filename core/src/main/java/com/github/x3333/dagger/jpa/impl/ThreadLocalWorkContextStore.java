@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.WorkContext;
+import com.github.x3333.dagger.jpa.WorkContextStore;
+
+/**
+ * {@link WorkContextStore} backed by a {@link ThreadLocal}. This is the default store, the fastest for long-lived, pooled threads.
+ * 
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class ThreadLocalWorkContextStore implements WorkContextStore {
+
+  private final ThreadLocal<WorkContext> context = new ThreadLocal<>();
+
+  @Override
+  public WorkContext get() {
+    return context.get();
+  }
+
+  @Override
+  public void set(final WorkContext context) {
+    this.context.set(context);
+  }
+
+  @Override
+  public void remove() {
+    context.remove();
+  }
+
+}
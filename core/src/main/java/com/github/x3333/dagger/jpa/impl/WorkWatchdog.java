@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.impl;
+
+import com.github.x3333.dagger.jpa.WorkContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the open units of work and reports the ones open longer than a threshold, enabled by
+ * {@link com.github.x3333.dagger.jpa.JpaProperties#WATCHDOG_THRESHOLD}.
+ *
+ * <p>
+ * Units of work are written to a slot of a fixed array when they begin and cleared when they end, the slot found from the identity hash
+ * of the context, so the thread doing the work pays a slot write and no lock; the thread holding each one and its start time are read
+ * from its {@link WorkContext}. Beyond {@value #SLOTS} open units of work, the rest go to a concurrent set. A daemon thread sweeps the
+ * slots, logging each outermost unit of work over the threshold once, with the stack trace of its thread, and ending the ones left open by
+ * terminated threads.
+ *
+ * <p>
+ * Detached units of work are not bound to a thread, so they are not reported until attached again.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+final class WorkWatchdog {
+
+  private static final int SLOTS = 1024;
+
+  private final Logger logger = LoggerFactory.getLogger(WorkWatchdog.class);
+
+  private final String persistenceUnitName;
+  private final long thresholdNanos;
+  private final Consumer<WorkContext> leaked;
+
+  private final AtomicReferenceArray<WorkContext> slots = new AtomicReferenceArray<>(SLOTS);
+  private final Set<WorkContext> overflow = ConcurrentHashMap.newKeySet();
+  // Only used by the sweeping thread.
+  private final Set<WorkContext> reported = Collections.newSetFromMap(new WeakHashMap<>());
+
+  @Nullable
+  private volatile ScheduledExecutorService sweeper;
+
+  /**
+   * @param leaked Ends a unit of work left open by a terminated thread, closing its EntityManager and giving its permit back.
+   */
+  WorkWatchdog(final String persistenceUnitName, final long thresholdMillis, final Consumer<WorkContext> leaked) {
+    this.persistenceUnitName = persistenceUnitName;
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.leaked = leaked;
+  }
+
+  //
+
+  /**
+   * Tracks a unit of work that has begun.
+   */
+  void opened(final WorkContext context) {
+    final int first = slot(context);
+    for (int i = 0; i < SLOTS; i++) {
+      final int slot = (first + i) & (SLOTS - 1);
+      if (slots.get(slot) == null && slots.compareAndSet(slot, null, context)) {
+        return;
+      }
+    }
+    overflow.add(context);
+  }
+
+  /**
+   * Stops tracking a unit of work that has ended. Contexts don't move, so it is found as far from its first slot as when it was opened.
+   */
+  void closed(final WorkContext context) {
+    final int first = slot(context);
+    for (int i = 0; i < SLOTS; i++) {
+      final int slot = (first + i) & (SLOTS - 1);
+      if (slots.get(slot) == context) {
+        slots.set(slot, null);
+        return;
+      }
+    }
+    overflow.remove(context);
+  }
+
+  void start() {
+    final long period = Math.max(TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 2, 10);
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "jpa-watchdog-" + persistenceUnitName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    sweeper = executor;
+  }
+
+  void stop() {
+    final ScheduledExecutorService executor = sweeper;
+    if (executor != null) {
+      sweeper = null;
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return Outermost units of work open longer than the threshold.
+   */
+  List<OpenWork> openWork() {
+    final List<OpenWork> openWork = new ArrayList<>();
+    final long now = System.nanoTime();
+    for (int i = 0; i < SLOTS; i++) {
+      addOpenWork(openWork, slots.get(i), now);
+    }
+    for (final WorkContext context : overflow) {
+      addOpenWork(openWork, context, now);
+    }
+    return openWork;
+  }
+
+  //
+
+  private void sweep() {
+    try {
+      final long now = System.nanoTime();
+      for (int i = 0; i < SLOTS; i++) {
+        final WorkContext context = slots.get(i);
+        if (context != null && check(context, now) && slots.compareAndSet(i, context, null)) {
+          end(context);
+        }
+      }
+      for (final WorkContext context : overflow) {
+        if (check(context, now) && overflow.remove(context)) {
+          end(context);
+        }
+      }
+    } catch (final RuntimeException e) {
+      // Keep the schedule running.
+      logger.error("Watchdog sweep failed", e);
+    }
+  }
+
+  /**
+   * Reports a unit of work over the threshold.
+   *
+   * @return true if it was left open by a terminated thread.
+   */
+  private boolean check(final WorkContext context, final long now) {
+    final Thread thread = context.getThread();
+    if (thread == null) {
+      return false;
+    }
+    if (thread.isAlive()) {
+      if (context.getSuspended() == null && now - context.getBegunAt() > thresholdNanos && reported.add(context)) {
+        final OpenWork openWork = snapshot(thread, context, now);
+        final Throwable stackTrace = new Throwable("Stack trace of " + openWork.getThread());
+        stackTrace.setStackTrace(openWork.getStackTrace());
+        logger.warn("Unit of work open for {}ms in thread {}, method {}", openWork.getOpenMillis(), openWork.getThread(),
+            openWork.getMethod(), stackTrace);
+      }
+      return false;
+    }
+    // A terminated thread can't end its work anymore, whatever the time.
+    return true;
+  }
+
+  private void end(final WorkContext context) {
+    logger.warn("Unit of work leaked by terminated thread {} after {}ms, method {}, ending it", context.getThread().getName(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - context.getBegunAt()), context.getMethod());
+    leaked.accept(context);
+  }
+
+  private void addOpenWork(final List<OpenWork> openWork, @Nullable final WorkContext context, final long now) {
+    if (context == null || context.getSuspended() != null) {
+      return;
+    }
+    final Thread thread = context.getThread();
+    if (thread != null && now - context.getBegunAt() > thresholdNanos) {
+      openWork.add(snapshot(thread, context, now));
+    }
+  }
+
+  private static int slot(final WorkContext context) {
+    final int hash = System.identityHashCode(context);
+    return (hash ^ hash >>> 16) & (SLOTS - 1);
+  }
+
+  private static OpenWork snapshot(final Thread thread, final WorkContext context, final long now) {
+    final boolean alive = thread.isAlive();
+    return new OpenWork(thread.getName(), alive, context.getMethod(), TimeUnit.NANOSECONDS.toMillis(now - context.getBegunAt()),
+        alive ? thread.getStackTrace() : new StackTraceElement[0]);
+  }
+
+}
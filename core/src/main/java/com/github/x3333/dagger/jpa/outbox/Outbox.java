@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.outbox;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.github.x3333.dagger.jpa.JpaWork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Events published inside {@link com.github.x3333.dagger.jpa.Transactional @Transactional} methods, delivered by a background thread only
+ * once their transaction commits. Events of rolled back transactions are discarded.
+ *
+ * <p>
+ * Committed events go through a bounded queue, drained in batches of up to {@code batchSize} events by the dispatching thread. When the
+ * queue is full, committing threads wait for room, so a slow dispatcher slows publishers down instead of piling events up. A batch whose
+ * dispatch fails is dispatched again, after a delay doubling up to a minute, before any later event.
+ *
+ * <p>
+ * A persistent outbox also stores each event, as an {@link OutboxEvent} row, in the transaction publishing it, and deletes it once
+ * dispatched. Events not dispatched before a crash or a stop are dispatched again when the outbox starts, so delivery is at least once.
+ * Otherwise events are only kept in memory and lost on a crash.
+ *
+ * <pre>
+ * Outbox outbox = Outbox.builder(jpaWork, events -&gt; broker.send(events))//
+ *     .capacity(10000)//
+ *     .batchSize(100)//
+ *     .retryDelayMillis(1000)//
+ *     .persistent(true)//
+ *     .build();
+ * outbox.start();
+ * </pre>
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+public final class Outbox {
+
+  /**
+   * Builds an {@link Outbox}.
+   */
+  public static final class Builder {
+
+    private final JpaWork work;
+    private final OutboxDispatcher dispatcher;
+    private int capacity = 1024;
+    private int batchSize = 100;
+    private long retryDelayMillis = 1000;
+    private boolean persistent;
+
+    private Builder(final JpaWork work, final OutboxDispatcher dispatcher) {
+      this.work = checkNotNull(work);
+      this.dispatcher = checkNotNull(dispatcher);
+    }
+
+    /**
+     * @param capacity Committed events waiting for dispatch above which committing threads wait. By default 1024.
+     * @return This builder.
+     */
+    public Builder capacity(final int capacity) {
+      checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * @param batchSize Maximum number of events per dispatch. By default 100.
+     * @return This builder.
+     */
+    public Builder batchSize(final int batchSize) {
+      checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * @param retryDelayMillis Delay before dispatching again a batch whose dispatch failed, doubled on each failure up to a minute. By
+     *        default 1000.
+     * @return This builder.
+     */
+    public Builder retryDelayMillis(final long retryDelayMillis) {
+      checkArgument(retryDelayMillis > 0, "retryDelayMillis must be positive: %s", retryDelayMillis);
+      this.retryDelayMillis = retryDelayMillis;
+      return this;
+    }
+
+    /**
+     * @param persistent If events are stored in the transaction publishing them. By default false.
+     * @return This builder.
+     */
+    public Builder persistent(final boolean persistent) {
+      this.persistent = persistent;
+      return this;
+    }
+
+    public Outbox build() {
+      return new Outbox(this);
+    }
+
+  }
+
+  private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  // Longest a stop waits for an idle dispatching thread.
+  private static final long IDLE_POLL_MILLIS = 100;
+
+  private final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+  private final JpaWork work;
+  private final OutboxDispatcher dispatcher;
+  private final int batchSize;
+  private final long retryDelayMillis;
+  private final boolean persistent;
+  private final BlockingQueue<OutboxEvent> queue;
+  // Committing threads enqueuing, the dispatching thread waits for them when stopping.
+  private final AtomicInteger enqueuing = new AtomicInteger();
+
+  @Nullable
+  private volatile Thread thread;
+
+  private Outbox(final Builder builder) {
+    this.work = builder.work;
+    this.dispatcher = builder.dispatcher;
+    this.batchSize = builder.batchSize;
+    this.retryDelayMillis = builder.retryDelayMillis;
+    this.persistent = builder.persistent;
+    this.queue = new ArrayBlockingQueue<>(builder.capacity);
+  }
+
+  //
+
+  /**
+   * @param work Work of the unit the events are published in.
+   * @param dispatcher Delivers the events.
+   * @return A new builder.
+   */
+  public static Builder builder(final JpaWork work, final OutboxDispatcher dispatcher) {
+    return new Builder(work, dispatcher);
+  }
+
+  /**
+   * Publishes an event, dispatched once the transaction in progress commits.
+   *
+   * @param topic Topic of the event.
+   * @param payload Payload of the event, null if none.
+   * @throws IllegalStateException If there is no {@code @Transactional} transaction in progress.
+   */
+  public void publish(final String topic, @Nullable final String payload) {
+    final OutboxEvent event = new OutboxEvent(checkNotNull(topic), payload);
+    work.afterCommit(() -> enqueue(event));
+    if (persistent) {
+      work.getEntityManager().persist(event);
+    }
+  }
+
+  /**
+   * Starts the dispatching thread. A persistent outbox first dispatches the stored events left from previous runs. The unit must be
+   * started.
+   */
+  public synchronized void start() {
+    checkState(thread == null, "Outbox already started!");
+    final List<OutboxEvent> stored = persistent ? stored() : ImmutableList.of();
+    final Thread dispatching = new Thread(() -> run(stored), "jpa-outbox");
+    dispatching.setDaemon(true);
+    thread = dispatching;
+    dispatching.start();
+  }
+
+  /**
+   * Stops the dispatching thread, after dispatching once the events already committed, including the ones of committing threads waiting
+   * for room. The dispatching thread is not interrupted, as interrupting JDBC calls can close their connection.
+   */
+  public synchronized void stop() {
+    final Thread dispatching = thread;
+    if (dispatching == null) {
+      return;
+    }
+    thread = null;
+    LockSupport.unpark(dispatching);
+    try {
+      dispatching.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  //
+
+  private void enqueue(final OutboxEvent event) {
+    enqueuing.incrementAndGet();
+    try {
+      if (thread == null) {
+        logger.warn("Outbox not started, event not dispatched{}: {}", persistent ? " until the next start" : "", event);
+        return;
+      }
+      queue.put(event);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.error("Interrupted waiting for room in the outbox, event not dispatched: {}", event);
+    } finally {
+      enqueuing.decrementAndGet();
+    }
+  }
+
+  private void run(final List<OutboxEvent> stored) {
+    final List<OutboxEvent> batch = new ArrayList<>(batchSize);
+    int next = 0;
+    long delay = 0;
+    while (thread != null) {
+      if (batch.isEmpty()) {
+        if (next < stored.size()) {
+          final int end = Math.min(next + batchSize, stored.size());
+          batch.addAll(stored.subList(next, end));
+          next = end;
+        } else if (!poll(batch, IDLE_POLL_MILLIS)) {
+          continue;
+        }
+      }
+      if (dispatch(batch)) {
+        batch.clear();
+        delay = 0;
+      } else {
+        delay = delay == 0 ? retryDelayMillis : Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        logger.info("Dispatching {} outbox events again in {}ms", batch.size(), delay);
+        // Woken up by stop().
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+      }
+    }
+
+    // Dispatch what is left once. Committing threads see the outbox stopped, wait for the ones already enqueuing.
+    batch.addAll(stored.subList(next, stored.size()));
+    while (!batch.isEmpty() || !queue.isEmpty() || enqueuing.get() != 0) {
+      if (batch.isEmpty() && !poll(batch, 1)) {
+        continue;
+      }
+      queue.drainTo(batch, batchSize - batch.size());
+      final List<OutboxEvent> dispatched = batch.size() > batchSize ? batch.subList(0, batchSize) : batch;
+      if (!dispatch(dispatched)) {
+        logger.error("Outbox stopping, {} events not dispatched{}", dispatched.size(), persistent ? " until the next start" : "");
+      }
+      dispatched.clear();
+    }
+  }
+
+  /**
+   * Waits for committed events, adding up to a batch of them.
+   *
+   * @return false if none was committed in time.
+   */
+  private boolean poll(final List<OutboxEvent> batch, final long timeoutMillis) {
+    final OutboxEvent event;
+    try {
+      event = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (final InterruptedException e) {
+      // The outbox owns the dispatching thread, only stop() ends it.
+      return false;
+    }
+    if (event == null) {
+      return false;
+    }
+    batch.add(event);
+    queue.drainTo(batch, batchSize - 1);
+    return true;
+  }
+
+  /**
+   * @return false if the dispatch failed.
+   */
+  private boolean dispatch(final List<OutboxEvent> batch) {
+    try {
+      dispatcher.dispatch(ImmutableList.copyOf(batch));
+    } catch (final RuntimeException e) {
+      logger.error("Dispatch of {} outbox events failed", batch.size(), e);
+      return false;
+    }
+
+    if (persistent) {
+      try {
+        delete(batch);
+      } catch (final RuntimeException e) {
+        logger.error("Deleting {} dispatched outbox events failed, they will be dispatched again", batch.size(), e);
+      }
+    }
+    return true;
+  }
+
+  private void delete(final List<OutboxEvent> batch) {
+    final List<Long> ids = new ArrayList<>(batch.size());
+    for (final OutboxEvent event : batch) {
+      ids.add(event.getId());
+    }
+
+    work.beginNew();
+    try {
+      final EntityManager em = work.getEntityManager();
+      em.getTransaction().begin();
+      try {
+        em.createQuery("DELETE FROM OutboxEvent e WHERE e.id IN :ids").setParameter("ids", ids).executeUpdate();
+        em.getTransaction().commit();
+      } finally {
+        if (em.getTransaction().isActive()) {
+          em.getTransaction().rollback();
+        }
+      }
+    } finally {
+      work.end();
+    }
+  }
+
+  private List<OutboxEvent> stored() {
+    final List<OutboxEvent> stored;
+    work.beginNew();
+    try {
+      stored = work.getEntityManager().createQuery("FROM OutboxEvent e ORDER BY e.id", OutboxEvent.class).getResultList();
+    } finally {
+      work.end();
+    }
+
+    logger.info("Dispatching {} stored outbox events", stored.size());
+    return stored;
+  }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.outbox;
+
+import java.util.List;
+
+/**
+ * Delivers the events of an {@link Outbox}, e.g. to a message broker or a cache.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@FunctionalInterface
+public interface OutboxDispatcher {
+
+  /**
+   * Delivers a batch of events, called by the single dispatching thread of the outbox. If it throws, the same batch is delivered again
+   * after a delay, before any later event.
+   *
+   * @param events Events, in the order their transactions committed.
+   */
+  void dispatch(List<OutboxEvent> events);
+
+}
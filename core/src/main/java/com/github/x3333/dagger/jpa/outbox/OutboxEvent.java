@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.outbox;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Event published to an {@link Outbox}. A persistent outbox stores it in the {@code dagger_jpa_outbox} table, so this class must be listed
+ * in the {@code persistence.xml} of the unit.
+ *
+ * @author Tercio Gaudencio Filho (terciofilho [at] gmail.com)
+ */
+@Entity
+@Table(name = "dagger_jpa_outbox")
+public class OutboxEvent {
+
+  @Id
+  @GeneratedValue
+  private Long id;
+
+  @Column(nullable = false)
+  private String topic;
+
+  @Lob
+  private String payload;
+
+  protected OutboxEvent() {}
+
+  OutboxEvent(final String topic, @Nullable final String payload) {
+    this.topic = topic;
+    this.payload = payload;
+  }
+
+  //
+
+  /**
+   * @return Id of the stored event, null if the outbox is not persistent.
+   */
+  @Nullable
+  public Long getId() {
+    return id;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  @Nullable
+  public String getPayload() {
+    return payload;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)//
+        .add("id", id)//
+        .add("topic", topic).toString();
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * EntityManagers pooled by {@link JpaProperties#POOL_SIZE}.
+ */
+public class EntityManagerPoolTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void poolReusesResetEntityManager() {
+		service = TestServices.start(JpaProperties.POOL_SIZE, 1);
+		service.begin();
+		EntityManager em = service.getEntityManager();
+		em.setFlushMode(FlushModeType.COMMIT);
+		em.setProperty("org.hibernate.flushMode", "MANUAL");
+		service.end();
+
+		service.begin();
+		assertSame(service.getEntityManager(), em);
+		assertEquals(em.getFlushMode(), FlushModeType.AUTO);
+		assertEquals(em.getProperties().get("org.hibernate.flushMode"), "AUTO");
+		service.end();
+
+		assertEquals(service.getPoolStatistics().getMisses(), 1l);
+		assertEquals(service.getPoolStatistics().getHits(), 1l);
+		assertEquals(service.getPoolStatistics().getIdle(), 1);
+	}
+
+	@Test
+	public void poolDiscardsAddedProperties() {
+		service = TestServices.start(JpaProperties.POOL_SIZE, 1);
+		service.begin();
+		EntityManager em = service.getEntityManager();
+		// A property a new EntityManager doesn't have can't be removed
+		em.setProperty("javax.persistence.query.timeout", 1000);
+		service.end();
+
+		service.begin();
+		assertNotSame(service.getEntityManager(), em);
+		assertFalse(service.getEntityManager().getProperties().containsKey("javax.persistence.query.timeout"));
+		service.end();
+		assertEquals(service.getPoolStatistics().getDiscarded(), 1l);
+	}
+
+}
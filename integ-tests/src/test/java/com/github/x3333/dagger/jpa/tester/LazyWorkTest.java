@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * Units of work opening their EntityManager on first use, see {@link JpaProperties#LAZY_WORK}.
+ */
+public class LazyWorkTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void lazyWorkOpensOnFirstUse() {
+		service = TestServices.start(JpaProperties.LAZY_WORK, true, JpaProperties.POOL_SIZE, 1);
+		service.begin();
+		assertFalse(service.getContext().hasEntityManager());
+		service.end();
+		// Work that never used its EntityManager didn't take one from the pool
+		assertEquals(service.getPoolStatistics().getMisses(), 0l);
+
+		service.begin();
+		EntityManager em = service.getEntityManager();
+		assertTrue(service.getContext().hasEntityManager());
+		assertSame(service.getEntityManager(), em);
+		service.end();
+		assertEquals(service.getPoolStatistics().getMisses(), 1l);
+	}
+
+}
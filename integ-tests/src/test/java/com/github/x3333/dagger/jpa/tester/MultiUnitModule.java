@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+
+import com.github.x3333.dagger.jpa.JpaUnit;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+import com.github.x3333.dagger.jpa.impl.JpaUnits;
+
+import dagger.Module;
+import dagger.Provides;
+import dagger.multibindings.IntoMap;
+import dagger.multibindings.StringKey;
+
+/**
+ * The bindings an application writes for an additional persistence unit: the unit itself and its qualified {@link JpaWork} and
+ * {@link EntityManager}.
+ */
+@Module
+public abstract class MultiUnitModule {
+
+	static final String REPORTS = "reports";
+
+	@Provides
+	@Named("jpa.unitname")
+	static String providesJpaUnitName() {
+		return "dagger-jpa";
+	}
+
+	@Provides
+	@Nullable
+	@Named("jpa.properties")
+	static Map<?, ?> providesJpaProperties() {
+		return null;
+	}
+
+	@Provides
+	@Singleton
+	@IntoMap
+	@StringKey(REPORTS)
+	static JpaServiceImpl providesReports() {
+		return new JpaServiceImpl("dagger-jpa-reports", null);
+	}
+
+	@Provides
+	@JpaUnit(REPORTS)
+	static JpaWork providesReportsWork(JpaUnits units) {
+		return units.work(REPORTS);
+	}
+
+	@Provides
+	@JpaUnit(REPORTS)
+	static EntityManager providesReportsEntityManager(@JpaUnit(REPORTS) JpaWork work) {
+		return work.getEntityManager();
+	}
+
+}
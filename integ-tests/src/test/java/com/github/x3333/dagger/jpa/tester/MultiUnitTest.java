@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.DriverManager;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+
+/**
+ * A second persistence unit, injected through the {@link com.github.x3333.dagger.jpa.JpaUnit @JpaUnit} bindings of
+ * {@link MultiUnitModule}.
+ */
+public class MultiUnitTest {
+
+	private static JpaService jpaService;
+	private static JpaWork jpaWork;
+	private static JpaWork reportsWork;
+	private static ReportWriter reportWriter;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		DriverManager.getConnection("jdbc:derby:memory:dagger-jpa;create=true").close();
+
+		MultiUnitComponent component = DaggerMultiUnitComponent.builder().build();
+		jpaService = component.jpaService();
+		jpaWork = component.jpaWork();
+		reportsWork = component.reportsWork();
+		jpaService.start();
+		reportWriter = component.reportWriter();
+	}
+
+	@AfterClass
+	public static void stop() {
+		jpaService.stop();
+	}
+
+	@Before
+	public void cleanup() {
+		TestData.cleanup(jpaWork);
+		TestData.cleanup(reportsWork);
+	}
+
+	@Test
+	public void qualifiedUnitCommits() {
+		reportWriter.write();
+
+		assertEquals(TestData.count(reportsWork), 1l);
+		assertEquals(TestData.count(jpaWork), 0l);
+	}
+
+	@Test
+	public void qualifiedUnitRollsBack() {
+		try {
+			reportWriter.writeAndRollback();
+			fail("Should have thrown");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		assertEquals(TestData.count(reportsWork), 0l);
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import com.github.x3333.dagger.jpa.Transactional;
+import com.github.x3333.dagger.jpa.outbox.Outbox;
+
+public abstract class OutboxPublisher {
+
+	@Transactional
+	public void publish(Outbox outbox, String topic) {
+		outbox.publish(topic, null);
+	}
+
+	@Transactional
+	public void publishAndRollback(Outbox outbox, String topic) {
+		outbox.publish(topic, null);
+		throw new IllegalStateException("Rolled back");
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.DriverManager;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.outbox.Outbox;
+import com.github.x3333.dagger.jpa.outbox.OutboxEvent;
+
+/**
+ * Events published to an {@link Outbox} by transactional methods.
+ */
+public class OutboxTest {
+
+	private static JpaService jpaService;
+	private static JpaWork jpaWork;
+	private static OutboxPublisher publisher;
+
+	private final BlockingQueue<OutboxEvent> dispatched = new LinkedBlockingQueue<>();
+	private Outbox outbox;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		DriverManager.getConnection("jdbc:derby:memory:dagger-jpa;create=true").close();
+
+		TestComponent component = DaggerTestComponent.builder().build();
+		jpaService = component.jpaService();
+		jpaWork = component.jpaWork();
+		jpaService.start();
+		publisher = component.outboxPublisher();
+	}
+
+	@AfterClass
+	public static void stop() {
+		jpaService.stop();
+	}
+
+	@After
+	public void stopOutbox() {
+		if (outbox != null) {
+			outbox.stop();
+		}
+		deleteStored();
+	}
+
+	@Test
+	public void commitDispatches() throws InterruptedException {
+		outbox = start(Outbox.builder(jpaWork, dispatched::addAll));
+		publisher.publish(outbox, "committed");
+
+		assertEquals(next().getTopic(), "committed");
+	}
+
+	@Test
+	public void rollbackDiscards() throws InterruptedException {
+		outbox = start(Outbox.builder(jpaWork, dispatched::addAll).persistent(true));
+		try {
+			publisher.publishAndRollback(outbox, "rolledBack");
+			fail("Should have thrown an IllegalStateException.");
+		} catch (IllegalStateException e) {
+		}
+		publisher.publish(outbox, "committed");
+
+		assertEquals(next().getTopic(), "committed");
+		outbox.stop();
+		assertTrue(dispatched.isEmpty());
+		assertEquals(countStored(), 0l);
+	}
+
+	@Test
+	public void failedDispatchRetried() throws InterruptedException {
+		AtomicInteger attempts = new AtomicInteger();
+		outbox = start(Outbox.builder(jpaWork, events -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("Broker down");
+			}
+			dispatched.addAll(events);
+		}).retryDelayMillis(1));
+		publisher.publish(outbox, "retried");
+
+		assertEquals(next().getTopic(), "retried");
+		assertEquals(attempts.get(), 2);
+	}
+
+	@Test
+	public void fullQueueWaitsAndStopDispatches() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		outbox = start(Outbox.builder(jpaWork, events -> {
+			awaitUninterruptibly(release);
+			dispatched.addAll(events);
+		}).capacity(1).batchSize(1));
+		// The dispatcher holds the first, the second fills the queue
+		publisher.publish(outbox, "first");
+		publisher.publish(outbox, "second");
+
+		Thread committing = new Thread(() -> publisher.publish(outbox, "third"));
+		committing.start();
+		awaitEnqueuing(committing);
+		assertTrue(dispatched.isEmpty());
+
+		// Stopping dispatches the events committed, including the one waiting for room
+		CompletableFuture<Void> stopped = CompletableFuture.runAsync(outbox::stop);
+		release.countDown();
+		stopped.join();
+		committing.join();
+
+		assertEquals(next().getTopic(), "first");
+		assertEquals(next().getTopic(), "second");
+		assertEquals(next().getTopic(), "third");
+	}
+
+	@Test
+	public void persistentRecoversStored() throws InterruptedException {
+		// Not started, the event is only stored
+		Outbox stopped = Outbox.builder(jpaWork, dispatched::addAll).persistent(true).build();
+		publisher.publish(stopped, "stored");
+		assertEquals(countStored(), 1l);
+		assertTrue(dispatched.isEmpty());
+
+		outbox = start(Outbox.builder(jpaWork, dispatched::addAll).persistent(true));
+		OutboxEvent event = next();
+		assertEquals(event.getTopic(), "stored");
+		assertNotNull(event.getId());
+
+		// Deleted once dispatched
+		outbox.stop();
+		assertEquals(countStored(), 0l);
+	}
+
+	private OutboxEvent next() throws InterruptedException {
+		OutboxEvent event = dispatched.poll(10, TimeUnit.SECONDS);
+		assertNotNull("No event dispatched.", event);
+		return event;
+	}
+
+	private static Outbox start(Outbox.Builder builder) {
+		Outbox outbox = builder.build();
+		outbox.start();
+		return outbox;
+	}
+
+	/**
+	 * Waits for a committing thread to wait for room in the outbox queue.
+	 */
+	private static void awaitEnqueuing(Thread committing) throws InterruptedException {
+		while (!waitsInQueue(committing)) {
+			assertFalse("Committed without waiting.", committing.getState() == Thread.State.TERMINATED);
+			Thread.sleep(1);
+		}
+	}
+
+	private static boolean waitsInQueue(Thread thread) {
+		for (StackTraceElement element : thread.getStackTrace()) {
+			if (element.getMethodName().equals("put") && element.getClassName().endsWith("BlockingQueue")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static long countStored() {
+		jpaWork.begin();
+		try {
+			return jpaWork.getEntityManager().createQuery("SELECT COUNT(e.id) FROM OutboxEvent e", Long.class).getSingleResult();
+		} finally {
+			jpaWork.end();
+		}
+	}
+
+	private static void deleteStored() {
+		jpaWork.begin();
+		try {
+			EntityManager em = jpaWork.getEntityManager();
+			em.getTransaction().begin();
+			em.createQuery("DELETE FROM OutboxEvent").executeUpdate();
+			em.getTransaction().commit();
+		} finally {
+			jpaWork.end();
+		}
+	}
+
+}
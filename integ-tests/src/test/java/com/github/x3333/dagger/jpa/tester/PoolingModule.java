@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+
+import dagger.Binds;
+import dagger.Module;
+import dagger.Provides;
+
+@Module
+public abstract class PoolingModule {
+
+	@Binds
+	@Singleton
+	abstract TransactionalInterface providesTransac(TransactionalClass impl);
+
+	@Provides
+	@Named("jpa.unitname")
+	static String providesJpaUnitName() {
+		return "dagger-jpa";
+	}
+
+	@Provides
+	@Nullable
+	@Named("jpa.properties")
+	static Map<?, ?> providesJpaProperties() {
+		// A single pooled EntityManager, so every transaction reuses what the previous one left behind
+		return Collections.singletonMap(JpaProperties.POOL_SIZE, 1);
+	}
+
+}
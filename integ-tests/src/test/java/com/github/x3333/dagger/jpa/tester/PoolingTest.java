@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.DriverManager;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.impl.JpaUnits;
+
+/**
+ * Transactions reusing the EntityManager pooled by {@link JpaProperties#POOL_SIZE}.
+ */
+public class PoolingTest {
+
+	private static JpaService jpaService;
+	private static JpaWork jpaWork;
+	private static TransactionalInterface transactional;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		DriverManager.getConnection("jdbc:derby:memory:dagger-jpa;create=true").close();
+
+		PoolingComponent component = DaggerPoolingComponent.builder().build();
+		jpaService = component.jpaService();
+		jpaWork = component.jpaWork();
+		jpaService.start();
+		transactional = component.transactional();
+	}
+
+	@AfterClass
+	public static void stop() {
+		jpaService.stop();
+	}
+
+	@Before
+	public void cleanup() {
+		TestData.cleanup(jpaWork);
+	}
+
+	@Test
+	public void transactionalAfterReadOnly() {
+		transactional.transactionalReadOnly();
+		// Same pooled EntityManager, whose properties are set again for the timeouts
+		transactional.transactionalTimeout();
+
+		assertEquals(TestData.count(jpaWork), 1l);
+		assertEquals(((JpaUnits) jpaService).primary().getPoolStatistics().getIdle(), 1);
+	}
+
+	@Test
+	public void transactionalAfterBatch() {
+		transactional.transactionalBatch(5);
+		// Same pooled EntityManager, flushed on commit as usual
+		transactional.transactionalCommit();
+
+		assertEquals(TestData.count(jpaWork), 6l);
+		assertEquals(((JpaUnits) jpaService).primary().getPoolStatistics().getDiscarded(), 0l);
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import com.github.x3333.dagger.jpa.JpaMetrics;
+import com.github.x3333.dagger.jpa.TransactionProfile;
+
+/**
+ * Keeps the profile of the last transaction, see {@link com.github.x3333.dagger.jpa.JpaProperties#PROFILING_THRESHOLD}.
+ */
+public class ProfileRecorder implements JpaMetrics {
+
+	private volatile TransactionProfile last;
+
+	@Override
+	public void transactionProfiled(TransactionProfile profile) {
+		last = profile;
+	}
+
+	public TransactionProfile last() {
+		return last;
+	}
+
+}
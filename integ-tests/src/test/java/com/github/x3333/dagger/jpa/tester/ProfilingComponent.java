@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import javax.inject.Singleton;
+
+import com.github.x3333.dagger.jpa.JpaModule;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.TransactionalModule;
+
+import dagger.Component;
+
+@Component(modules = { ProfilingModule.class, TransactionalModule.class, JpaModule.class })
+@Singleton
+public interface ProfilingComponent {
+
+	TransactionalInterface transactional();
+
+	JpaService jpaService();
+
+	ProfileRecorder profiles();
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.DriverManager;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.TransactionProfile;
+import com.github.x3333.dagger.jpa.tester.domain.SomeEntity;
+
+/**
+ * Transactions profiled by {@link JpaProperties#PROFILING_THRESHOLD}.
+ */
+public class ProfilingTest {
+
+	private static JpaService jpaService;
+	private static TransactionalInterface transactional;
+	private static ProfileRecorder profiles;
+
+	@BeforeClass
+	public static void start() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		DriverManager.getConnection("jdbc:derby:memory:dagger-jpa;create=true").close();
+
+		ProfilingComponent component = DaggerProfilingComponent.builder().build();
+		jpaService = component.jpaService();
+		jpaService.start();
+		transactional = component.transactional();
+		profiles = component.profiles();
+	}
+
+	@AfterClass
+	public static void stop() {
+		jpaService.stop();
+	}
+
+	@Test
+	public void profilesRepeatedLoads() {
+		int id = transactional.transactionalCommit();
+		assertTrue(profiles.last().getMethod().endsWith(".transactionalCommit"));
+
+		transactional.transactionalProfiled(id);
+		TransactionProfile profile = profiles.last();
+		assertTrue(profile.getMethod().endsWith(".transactionalProfiled"));
+		assertEquals(profile.getOperations().get("find").getCount(), 3);
+		assertEquals(profile.getShapes().get("find " + SomeEntity.class.getName()).getCount(), 3);
+		assertEquals(profile.getShapes().get("FROM SomeEntity").getCount(), 1);
+	}
+
+	@Test
+	public void profilesOnlyTheOutermostTransaction() {
+		transactional.transactionalTimeoutJoined();
+
+		// The joining method is recorded in the profile of the transaction it joined
+		TransactionProfile profile = profiles.last();
+		assertTrue(profile.getMethod().endsWith(".transactionalTimeoutJoined"));
+		assertEquals(profile.getOperations().get("getProperties").getCount(), 2);
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+import com.github.x3333.dagger.jpa.impl.JpaUnits;
+
+/**
+ * Read-only transactions routed to the {@link JpaProperties#READ_UNITS}. Units are not started, only routed to.
+ */
+public class ReadRoutingTest {
+
+	@Test
+	public void readRoutingRoundRobin() {
+		JpaUnits units = readUnits(JpaProperties.ROUTING_ROUND_ROBIN);
+		JpaServiceImpl r1 = (JpaServiceImpl) units.work("r1");
+		JpaServiceImpl r2 = (JpaServiceImpl) units.work("r2");
+
+		assertSame(units.route("", true), r1);
+		assertSame(units.route("", true), r2);
+		assertSame(units.route(JpaUnits.READ, false), r1);
+		assertSame(units.route("", true), r2);
+
+		// Writes go to the primary unit, named units to themselves
+		assertSame(units.route("", false), units.primary());
+		assertSame(units.route("r2", true), r2);
+		assertSame(units.route("", true), r1);
+	}
+
+	@Test
+	public void readRoutingLeastOutstanding() {
+		JpaUnits units = readUnits(JpaProperties.ROUTING_LEAST_OUTSTANDING);
+
+		JpaServiceImpl busy = units.route("", true);
+		long entered = units.enter(busy);
+		for (int i = 0; i < 3; i++) {
+			assertNotSame(units.route("", true), busy);
+		}
+		units.exit(busy, entered);
+
+		// Tied again, both are picked
+		assertNotSame(units.route("", true), units.route("", true));
+		assertSame(units.route("", false), units.primary());
+	}
+
+	private static JpaUnits readUnits(String routing) {
+		Map<String, JpaServiceImpl> units = new LinkedHashMap<>();
+		units.put("r1", new JpaServiceImpl(TestServices.UNIT, null));
+		units.put("r2", new JpaServiceImpl(TestServices.UNIT, null));
+		Map<Object, Object> properties = new HashMap<>();
+		properties.put(JpaProperties.READ_UNITS, "r1, r2");
+		properties.put(JpaProperties.READ_ROUTING, routing);
+		return new JpaUnits(new JpaServiceImpl(TestServices.UNIT, null), units, properties);
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+
+import com.github.x3333.dagger.jpa.JpaUnit;
+import com.github.x3333.dagger.jpa.Transactional;
+import com.github.x3333.dagger.jpa.tester.domain.SomeEntity;
+
+public abstract class ReportWriter {
+
+	private final Provider<EntityManager> em;
+
+	public ReportWriter(@JpaUnit(MultiUnitModule.REPORTS) Provider<EntityManager> em) {
+		this.em = em;
+	}
+
+	@Transactional(unit = MultiUnitModule.REPORTS)
+	public void write() {
+		em.get().persist(new SomeEntity());
+	}
+
+	@Transactional(unit = MultiUnitModule.REPORTS)
+	public void writeAndRollback() {
+		write();
+		throw new IllegalStateException("Rolled back");
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.persistence.PersistenceException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.JpaService;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * Starting {@link JpaServiceImpl} in the background.
+ */
+public class StartupTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void startAsync() {
+		service = new JpaServiceImpl(TestServices.UNIT, null);
+		CompletableFuture<JpaService> started = service.startAsync();
+		assertSame(started.join(), service);
+		assertTrue(service.hasStarted());
+		// Already started, completes at once
+		assertTrue(service.startAsync().isDone());
+
+		service.begin();
+		service.getEntityManager();
+		service.end();
+	}
+
+	@Test
+	public void startAsyncFails() {
+		service = new JpaServiceImpl("missing-unit", null);
+		try {
+			service.startAsync().join();
+			fail("Should have thrown a CompletionException.");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof PersistenceException);
+		}
+		assertFalse(service.hasStarted());
+	}
+
+	@Test
+	public void stopWhileStarting() {
+		Map<Object, Object> properties = new HashMap<>();
+		properties.put(JpaProperties.WATCHDOG_THRESHOLD, 1000);
+		service = new JpaServiceImpl(TestServices.UNIT, properties);
+		List<Runnable> starts = new ArrayList<>();
+		CompletableFuture<JpaService> started = service.startAsync(starts::add);
+
+		// Waits for the start, then stops the started service
+		CompletableFuture<Void> stopped = CompletableFuture.runAsync(service::stop);
+		starts.get(0).run();
+		stopped.join();
+
+		assertSame(started.join(), service);
+		assertFalse(service.hasStarted());
+	}
+
+}
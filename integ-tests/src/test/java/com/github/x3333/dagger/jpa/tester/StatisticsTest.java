@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.impl.Histogram;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * Statistics kept by each unit, see {@link JpaProperties#STATISTICS}.
+ */
+public class StatisticsTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void statisticsRecordedByDefault() {
+		service = TestServices.start();
+		for (int i = 0; i < 3; i++) {
+			service.begin();
+			service.end();
+		}
+
+		assertEquals(service.getStatistics().getWorkBegun(), 3l);
+		Histogram workTime = service.getStatistics().getWorkTime();
+		assertEquals(workTime.getCount(), 3l);
+		assertTrue(workTime.getPercentile(50) <= workTime.getPercentile(100));
+		assertTrue(workTime.getPercentile(100) <= workTime.getMax());
+		assertTrue(service.statisticsReport(10).startsWith("work: begun=3 "));
+	}
+
+	@Test
+	public void statisticsDisabled() {
+		service = TestServices.start(JpaProperties.STATISTICS, false);
+		service.begin();
+		service.end();
+
+		assertNull(service.getStatistics());
+		assertEquals(service.statisticsReport(10), "");
+	}
+
+}
@@ -15,14 +15,14 @@ package com.github.x3333.dagger.jpa.tester;
 
 import javax.inject.Singleton;
 
-import com.github.x3333.dagger.aop.InterceptorModule;
 import com.github.x3333.dagger.jpa.JpaModule;
 import com.github.x3333.dagger.jpa.JpaService;
 import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.TransactionalModule;
 
 import dagger.Component;
 
-@Component(modules = { TestModule.class, InterceptorModule.class, JpaModule.class })
+@Component(modules = { TestModule.class, TransactionalModule.class, JpaModule.class })
 @Singleton
 public interface TestComponent {
 
@@ -32,4 +32,6 @@ public interface TestComponent {
 	
 	JpaWork jpaWork();
 
+	OutboxPublisher outboxPublisher();
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+
+package com.github.x3333.dagger.jpa.tester;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import com.github.x3333.dagger.jpa.JpaWork;
+
+/**
+ * Database helpers shared by the tests, each in a unit of work of its own.
+ */
+final class TestData {
+
+	private TestData() {}
+
+	/**
+	 * Count persisted entities
+	 */
+	static long count(JpaWork jpaWork) {
+		jpaWork.begin();
+		try {
+			EntityManager em = jpaWork.getEntityManager();
+			TypedQuery<Long> query = em.createQuery("SELECT COUNT(e.id) FROM SomeEntity e", Long.class);
+			return query.getSingleResult();
+		} finally {
+			jpaWork.end();
+		}
+	}
+
+	/**
+	 * Cleanup the database to start a test
+	 */
+	static void cleanup(JpaWork jpaWork) {
+		jpaWork.begin();
+		try {
+			EntityManager em = jpaWork.getEntityManager();
+			em.getTransaction().begin();
+			em.createQuery("DELETE FROM SomeEntity").executeUpdate();
+			em.getTransaction().commit();
+		} finally {
+			jpaWork.end();
+		}
+	}
+
+}
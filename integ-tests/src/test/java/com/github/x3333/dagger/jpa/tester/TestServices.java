@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import java.sql.DriverManager;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * Services started by the tests without a component, each with properties of its own.
+ */
+final class TestServices {
+
+	static final String UNIT = "dagger-jpa";
+
+	private TestServices() {}
+
+	/**
+	 * Create the in-memory database of the persistence unit
+	 */
+	static void createDatabase() throws Exception {
+		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
+		DriverManager.getConnection("jdbc:derby:memory:dagger-jpa;create=true").close();
+	}
+
+	/**
+	 * Start a service with the given property keys and values
+	 */
+	static JpaServiceImpl start(Object... properties) {
+		Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < properties.length; i += 2) {
+			map.put(properties[i], properties[i + 1]);
+		}
+		JpaServiceImpl service = new JpaServiceImpl(UNIT, map);
+		service.start();
+		return service;
+	}
+
+	/**
+	 * Stop a service, if started
+	 */
+	static void stop(JpaServiceImpl service) {
+		if (service != null && service.hasStarted()) {
+			service.stop();
+		}
+	}
+
+}
@@ -1,13 +1,26 @@
 package com.github.x3333.dagger.jpa.tester;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import javax.persistence.EntityManager;
-import javax.persistence.Query;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.RollbackException;
 import javax.persistence.TypedQuery;
 
 import org.junit.AfterClass;
@@ -50,6 +63,11 @@ public class TransacionalTest {
 		jpaService.stop();
 	}
 
+	@Test
+	public void testGeneratedInterceptor() {
+		assertTrue(transactional instanceof Transactional_TransactionalClass);
+	}
+
 	@Test
 	public void testTransactionalCommit() {
 		cleanup();
@@ -122,17 +140,209 @@ public class TransacionalTest {
 		}
 	}
 
-	/**
-	 * Cleanup the database to start a test
-	 */
+	@Test
+	public void transactionalRequiresNewRollback() {
+		cleanup();
+		try {
+			transactional.transactionalRequiresNewRollback();
+			fail("Should have thrown a MyException.");
+		} catch (MyException e) {
+		}
+
+		// Only the new transaction is committed
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalReadOnly() {
+		cleanup();
+		transactional.transactionalReadOnly();
+
+		assertEquals(count(), 0l);
+	}
+
+	@Test
+	public void transactionalBatch() {
+		cleanup();
+		// Last write of a full batch is flushed and detached
+		assertEquals(transactional.transactionalBatch(20), false);
+		assertEquals(transactional.transactionalBatch(5), true);
+
+		assertEquals(count(), 25l);
+	}
+
+	@Test
+	public void transactionalCallbacks() throws MyException {
+		cleanup();
+		List<String> events = new ArrayList<>();
+		transactional.transactionalCallbacks(events, false);
+		try {
+			transactional.transactionalCallbacks(events, true);
+			fail("Should have thrown a MyException.");
+		} catch (MyException e) {
+		}
+
+		assertEquals(events, Arrays.asList("commit", "rollback"));
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalStream() {
+		cleanup();
+		transactional.transactionalCommit();
+		transactional.transactionalCommit();
+
+		// Detaching the streamed entities keeps the pending one
+		assertEquals(transactional.transactionalStream(), 2l);
+		assertEquals(count(), 3l);
+	}
+
+	@Test
+	public void readAll() {
+		cleanup();
+		transactional.transactionalCommit();
+		transactional.transactionalCommit();
+
+		Function<EntityManager, Long> count = em -> em.createQuery("SELECT COUNT(e.id) FROM SomeEntity e", Long.class).getSingleResult();
+		List<Long> counts = jpaWork.readAll(Arrays.asList(count, count, count), ForkJoinPool.commonPool());
+
+		assertEquals(counts, Arrays.asList(2l, 2l, 2l));
+	}
+
+	@Test
+	public void transactionalRetry() {
+		cleanup();
+		AtomicInteger attempts = new AtomicInteger();
+		assertEquals(transactional.transactionalRetry(attempts, 1, new OptimisticLockException()), 2);
+
+		// The failed attempt is rolled back
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalRetrySqlState() {
+		cleanup();
+		AtomicInteger attempts = new AtomicInteger();
+		// Serialization failure
+		RuntimeException failure = new RuntimeException(new SQLException("Deadlock", "40001"));
+		assertEquals(transactional.transactionalRetry(attempts, 1, failure), 2);
+
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalRetryExhausted() {
+		cleanup();
+		AtomicInteger attempts = new AtomicInteger();
+		try {
+			transactional.transactionalRetry(attempts, 5, new OptimisticLockException());
+			fail("Should have thrown an OptimisticLockException.");
+		} catch (OptimisticLockException e) {
+		}
+
+		// First attempt and 2 retries
+		assertEquals(attempts.get(), 3);
+		assertEquals(count(), 0l);
+	}
+
+	@Test
+	public void transactionalRetryJoined() {
+		cleanup();
+		AtomicInteger attempts = new AtomicInteger();
+		try {
+			transactional.transactionalRetryJoined(attempts);
+			fail("Should have thrown an OptimisticLockException.");
+		} catch (OptimisticLockException e) {
+		}
+
+		// Not retried, it is part of the outer transaction
+		assertEquals(attempts.get(), 1);
+		assertEquals(count(), 0l);
+	}
+
+	@Test
+	public void transactionalRetryNoRollback() {
+		cleanup();
+		AtomicInteger attempts = new AtomicInteger();
+		try {
+			transactional.transactionalRetryNoRollback(attempts);
+			fail("Should have thrown an OptimisticLockException.");
+		} catch (OptimisticLockException e) {
+		}
+
+		// Committed, so not retried
+		assertEquals(attempts.get(), 1);
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalAsyncCommit() {
+		cleanup();
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		CompletionStage<Integer> result = transactional.transactionalAsync(gate);
+
+		// Detached from this thread, the transaction is still in progress
+		assertFalse(jpaWork.hasBegun());
+		assertTrue(result instanceof CompletableFuture);
+		assertFalse(result.toCompletableFuture().isDone());
+
+		gate.complete(null);
+		assertNotNull(result.toCompletableFuture().join());
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalAsyncRollback() {
+		cleanup();
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		CompletionStage<Integer> result = transactional.transactionalAsync(gate);
+
+		gate.completeExceptionally(new MyException());
+		try {
+			result.toCompletableFuture().join();
+			fail("Should have thrown a MyException.");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof MyException);
+		}
+		assertEquals(count(), 0l);
+	}
+
+	@Test
+	public void transactionalAsyncJoined() {
+		cleanup();
+		assertTrue(transactional.transactionalAsyncJoined() != -1);
+		assertFalse(jpaWork.hasBegun());
+
+		assertEquals(count(), 1l);
+	}
+
+	@Test
+	public void transactionalTimeoutExpired() throws InterruptedException {
+		cleanup();
+		try {
+			transactional.transactionalTimeoutExpired();
+			fail("Should have thrown a RollbackException.");
+		} catch (RollbackException e) {
+		}
+
+		assertEquals(count(), 0l);
+	}
+
+	@Test
+	public void transactionalTimeoutJoined() {
+		int[] timeouts = transactional.transactionalTimeoutJoined();
+
+		// The joining method runs with its own, sooner, deadline, then the outer one is back
+		assertTrue(timeouts[0] <= 50);
+		assertTrue(timeouts[1] > 50);
+	}
+
+	private long count() {
+		return TestData.count(jpaWork);
+	}
+
 	private void cleanup() {
-		jpaWork.begin();
-		EntityManager em = jpaWork.getEntityManager();
-		em.getTransaction().begin();
-		Query query = em.createQuery("DELETE FROM SomeEntity");
-		query.executeUpdate();
-		em.getTransaction().commit();
-		jpaWork.end();
+		TestData.cleanup(jpaWork);
 	}
 
 }
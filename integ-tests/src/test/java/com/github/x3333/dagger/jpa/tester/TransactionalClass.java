@@ -13,14 +13,26 @@
 
 package com.github.x3333.dagger.jpa.tester;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
 import javax.inject.Provider;
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.OptimisticLockException;
 
+import com.github.x3333.dagger.jpa.JpaWork;
+import com.github.x3333.dagger.jpa.Propagation;
 import com.github.x3333.dagger.jpa.Transactional;
 import com.github.x3333.dagger.jpa.tester.domain.SomeEntity;
 
 public abstract class TransactionalClass implements TransactionalInterface {
 
+	private static final String QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
 	public static class MyException extends Exception {
 
 		private static final long serialVersionUID = -8123896745778519533L;
@@ -28,9 +40,11 @@ public abstract class TransactionalClass implements TransactionalInterface {
 	}
 
 	private Provider<EntityManager> em;
+	private JpaWork work;
 
-	public TransactionalClass(Provider<EntityManager> em) {
+	public TransactionalClass(Provider<EntityManager> em, JpaWork work) {
 		this.em = em;
+		this.work = work;
 	}
 	
 	@Override
@@ -56,4 +70,137 @@ public abstract class TransactionalClass implements TransactionalInterface {
 		throw new MyException();
 	}
 
+	@Override
+	@Transactional(rollbackOn = MyException.class)
+	public void transactionalRequiresNewRollback() throws MyException {
+		transactionalRequiresNew();
+		transactionalCommit();
+		throw new MyException();
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public int transactionalRequiresNew() {
+		return transactionalCommit();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void transactionalReadOnly() {
+		em.get().persist(new SomeEntity());
+	}
+
+	@Override
+	@Transactional(timeoutMillis = 60000)
+	public void transactionalTimeout() {
+		em.get().persist(new SomeEntity());
+	}
+
+	@Override
+	@Transactional(batchSize = 10)
+	public boolean transactionalBatch(int count) {
+		SomeEntity last = null;
+		for (int i = 0; i < count; i++) {
+			last = new SomeEntity();
+			em.get().persist(last);
+		}
+		return em.get().contains(last);
+	}
+
+	@Override
+	@Transactional(rollbackOn = MyException.class)
+	public void transactionalCallbacks(List<String> events, boolean fail) throws MyException {
+		work.afterCommit(() -> events.add("commit"));
+		work.afterRollback(() -> events.add("rollback"));
+		transactionalCommit();
+		if (fail) {
+			throw new MyException();
+		}
+	}
+
+	@Override
+	@Transactional
+	public long transactionalStream() {
+		// Not flushed before the query
+		em.get().setFlushMode(FlushModeType.COMMIT);
+		em.get().persist(new SomeEntity());
+		try (Stream<SomeEntity> stream = work.stream(em.get().createQuery("FROM SomeEntity", SomeEntity.class), 10, 1)) {
+			return stream.count();
+		}
+	}
+
+	@Override
+	@Transactional(retries = 2, backoff = 1)
+	public int transactionalRetry(AtomicInteger attempts, int failures, RuntimeException failure) {
+		em.get().persist(new SomeEntity());
+		if (attempts.incrementAndGet() <= failures) {
+			throw failure;
+		}
+		return attempts.get();
+	}
+
+	@Override
+	@Transactional
+	public int transactionalRetryJoined(AtomicInteger attempts) {
+		return transactionalRetry(attempts, 1, new OptimisticLockException());
+	}
+
+	@Override
+	@Transactional(retries = 2, backoff = 1, rollbackOn = MyException.class)
+	public void transactionalRetryNoRollback(AtomicInteger attempts) {
+		em.get().persist(new SomeEntity());
+		attempts.incrementAndGet();
+		throw new OptimisticLockException();
+	}
+
+	@Override
+	@Transactional(rollbackOn = MyException.class)
+	public CompletionStage<Integer> transactionalAsync(CompletionStage<Void> gate) {
+		SomeEntity entity = new SomeEntity();
+		em.get().persist(entity);
+		em.get().flush();
+		return gate.thenApply(v -> entity.getId());
+	}
+
+	@Override
+	@Transactional
+	public int transactionalAsyncJoined() {
+		CompletableFuture<Void> gate = new CompletableFuture<>();
+		CompletionStage<Integer> stage = transactionalAsync(gate);
+		gate.complete(null);
+		// Joined, the stage is returned as is and the unit of work stays bound until this method returns
+		return work.hasBegun() ? stage.toCompletableFuture().join() : -1;
+	}
+
+	@Override
+	@Transactional(timeoutMillis = 50)
+	public void transactionalTimeoutExpired() throws InterruptedException {
+		em.get().persist(new SomeEntity());
+		em.get().flush();
+		Thread.sleep(100);
+	}
+
+	@Override
+	@Transactional(timeoutMillis = 60000)
+	public int[] transactionalTimeoutJoined() {
+		int inner = transactionalTimeoutInner();
+		int outer = ((Number) em.get().getProperties().get(QUERY_TIMEOUT)).intValue();
+		return new int[] { inner, outer };
+	}
+
+	@Override
+	@Transactional(timeoutMillis = 50)
+	public int transactionalTimeoutInner() {
+		return ((Number) em.get().getProperties().get(QUERY_TIMEOUT)).intValue();
+	}
+
+	@Override
+	@Transactional
+	public int transactionalProfiled(int id) {
+		for (int i = 0; i < 3; i++) {
+			em.get().find(SomeEntity.class, id);
+		}
+		return em.get().createQuery("FROM SomeEntity", SomeEntity.class).getResultList().size();
+	}
+
 }
@@ -13,6 +13,10 @@
 
 package com.github.x3333.dagger.jpa.tester;
 
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.github.x3333.dagger.jpa.tester.TransactionalClass.MyException;
 
 public interface TransactionalInterface {
@@ -23,4 +27,36 @@ public interface TransactionalInterface {
 
 	void transactionalExceptionRollback() throws MyException;
 
+	void transactionalRequiresNewRollback() throws MyException;
+
+	int transactionalRequiresNew();
+
+	void transactionalReadOnly();
+
+	void transactionalTimeout();
+
+	boolean transactionalBatch(int count);
+
+	void transactionalCallbacks(List<String> events, boolean fail) throws MyException;
+
+	long transactionalStream();
+
+	int transactionalRetry(AtomicInteger attempts, int failures, RuntimeException failure);
+
+	int transactionalRetryJoined(AtomicInteger attempts);
+
+	void transactionalRetryNoRollback(AtomicInteger attempts);
+
+	CompletionStage<Integer> transactionalAsync(CompletionStage<Void> gate);
+
+	int transactionalAsyncJoined();
+
+	void transactionalTimeoutExpired() throws InterruptedException;
+
+	int[] transactionalTimeoutJoined();
+
+	int transactionalTimeoutInner();
+
+	int transactionalProfiled(int id);
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.WorkContext;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+import com.github.x3333.dagger.jpa.impl.OpenWork;
+
+/**
+ * Units of work reported by the watchdog enabled by {@link JpaProperties#WATCHDOG_THRESHOLD}.
+ */
+public class WatchdogTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void watchdogIgnoresRecentWork() {
+		service = TestServices.start(JpaProperties.WATCHDOG_THRESHOLD, 60000);
+		service.begin();
+		assertTrue(service.getOpenWork().isEmpty());
+		service.end();
+	}
+
+	@Test
+	public void watchdogListsOpenWork() throws InterruptedException {
+		service = TestServices.start(JpaProperties.WATCHDOG_THRESHOLD, 1);
+		service.begin();
+		awaitOlderThan(service.getContext(), 1);
+
+		List<OpenWork> openWork = service.getOpenWork();
+		assertEquals(openWork.size(), 1);
+		assertEquals(openWork.get(0).getThread(), Thread.currentThread().getName());
+		assertTrue(openWork.get(0).isThreadAlive());
+		assertTrue(openWork.get(0).getOpenMillis() >= 1);
+
+		// Nested work is listed through the outermost one
+		service.beginNew();
+		assertEquals(service.getOpenWork().size(), 1);
+		service.end();
+
+		// Detached work is not bound to a thread
+		WorkContext context = service.detach();
+		assertTrue(service.getOpenWork().isEmpty());
+		service.attach(context);
+		assertEquals(service.getOpenWork().size(), 1);
+
+		service.end();
+		assertTrue(service.getOpenWork().isEmpty());
+	}
+
+	@Test
+	public void watchdogEndsLeakedWork() throws InterruptedException {
+		service = TestServices.start(JpaProperties.WATCHDOG_THRESHOLD, 1, JpaProperties.WORK_LIMIT, 1,
+				JpaProperties.WORK_QUEUE_TIMEOUT, 60000, JpaProperties.POOL_SIZE, 1);
+		Thread leaking = new Thread(() -> {
+			service.begin();
+			service.getEntityManager().getTransaction().begin();
+		});
+		leaking.start();
+		leaking.join();
+
+		// Waits for the permit of the leaked work, given back by the watchdog
+		service.begin();
+		assertEquals(service.getStatistics().getWorkLeaked(), 1l);
+		// Its transaction rolled back, its EntityManager was pooled again
+		assertEquals(service.getPoolStatistics().getHits(), 1l);
+		assertFalse(service.getEntityManager().getTransaction().isActive());
+		service.end();
+		assertTrue(service.getOpenWork().isEmpty());
+	}
+
+	private static void awaitOlderThan(WorkContext context, long millis) throws InterruptedException {
+		while (System.nanoTime() - context.getBegunAt() <= TimeUnit.MILLISECONDS.toNanos(millis)) {
+			Thread.sleep(1);
+		}
+	}
+
+}
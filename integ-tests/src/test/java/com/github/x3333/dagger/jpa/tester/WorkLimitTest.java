@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Tercio Gaudencio Filho
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.github.x3333.dagger.jpa.tester;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.x3333.dagger.jpa.JpaProperties;
+import com.github.x3333.dagger.jpa.WorkRejectedException;
+import com.github.x3333.dagger.jpa.impl.JpaServiceImpl;
+
+/**
+ * Units of work limited by {@link JpaProperties#WORK_LIMIT}.
+ */
+public class WorkLimitTest {
+
+	private JpaServiceImpl service;
+
+	@BeforeClass
+	public static void createDatabase() throws Exception {
+		TestServices.createDatabase();
+	}
+
+	@After
+	public void stop() {
+		TestServices.stop(service);
+	}
+
+	@Test
+	public void workLimitRejects() {
+		service = TestServices.start(JpaProperties.WORK_LIMIT, 1);
+		service.begin();
+		// Nested work runs under the permit of the outer one
+		service.beginNew();
+		service.end();
+
+		try {
+			CompletableFuture.runAsync(() -> {
+				service.begin();
+				service.end();
+			}).join();
+			fail("Should have thrown a WorkRejectedException.");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof WorkRejectedException);
+		}
+		service.end();
+
+		assertEquals(service.getBulkheadStatistics().get(0).getRejected(), 1l);
+		assertEquals(service.getBulkheadStatistics().get(0).getOpen(), 0);
+	}
+
+	@Test
+	public void workLimitReleasesAfterClose() throws InterruptedException {
+		service = TestServices.start(JpaProperties.WORK_LIMIT, 1, JpaProperties.WORK_QUEUE_TIMEOUT, 60000, JpaProperties.POOL_SIZE, 1,
+				JpaProperties.LAZY_WORK, true);
+		service.begin();
+		service.getEntityManager();
+
+		CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> {
+			service.begin();
+			try {
+				// Lazy, the EntityManager is not taken from the pool yet
+				return service.getPoolStatistics().getIdle();
+			} finally {
+				service.end();
+			}
+		});
+		while (service.getBulkheadStatistics().get(0).getWaiting() == 0) {
+			Thread.sleep(1);
+		}
+		service.end();
+
+		// The permit is given back once the EntityManager is pooled
+		assertEquals(waiting.join(), (Integer) 1);
+	}
+
+}